@@ -0,0 +1,239 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Finds the commit that last changed each line of a file. Starting at
+ *  a commit, the walk goes back along first parents in the commit graph,
+ *  carrying the lines not yet accounted for. Commits whose changed-path
+ *  filters rule the file out, or whose parent has the same blob for it,
+ *  are passed over without a diff; otherwise the lines the line diff
+ *  from the parent's blob shows as added belong to the commit, and the
+ *  rest are carried on to the parent. The walk stops once every line
+ *  belongs to a commit. The result for each commit blamed is cached per
+ *  path, so a later walk reaching that commit takes the owners of its
+ *  remaining lines from the cache and need only cover newer commits.
+ *  @author Huixuan Lin
+ */
+public class Blame {
+
+    /** Magic number at the front of a cache file. */
+    static final int MAGIC = 0x47424c31;
+    /** Number of commits whose results a cache file keeps. */
+    static final int CACHE_ENTRIES = 16;
+
+    /** Constructor of the blame of files of the repository whose object
+     *  directory is OBJECTDIR. */
+    public Blame(File objectDir) {
+        _objects = objectDir;
+        _cache = Utils.join(objectDir.getParentFile(), "blame");
+    }
+
+    /** Return the id of the commit that last changed each line of the
+     *  file PATH as of the commit with id HEAD, or null if HEAD has no
+     *  such file. */
+    public String[] blame(String head, String path) throws IOException {
+        String blob = TreeNode.lookupFile(_objects,
+                Commit.fromFile(_objects, head).getFileSha1(), path);
+        if (blob == null) {
+            return null;
+        }
+        Diff.Lines lines = new Diff.Lines(Blob.fromFile(_objects, blob));
+        LinkedHashMap<String, String[]> cache = readCache(path);
+        String[] result = cache.get(head);
+        if (result != null && result.length == lines.size()) {
+            return result;
+        }
+        result = new String[lines.size()];
+        int[] owners = new int[lines.size()];
+        for (int i = 0; i < owners.length; i += 1) {
+            owners[i] = i;
+        }
+        int left = owners.length;
+        CommitGraph graph = CommitGraph.forObjects(_objects);
+        ChangedPaths filters = ChangedPaths.forObjects(_objects);
+        int position = graph.position(head);
+        String id = head;
+        while (left > 0) {
+            String[] cached = id.equals(head) ? null : cache.get(id);
+            if (cached != null && cached.length == owners.length) {
+                for (int i = 0; i < owners.length; i += 1) {
+                    if (owners[i] >= 0) {
+                        result[owners[i]] = cached[i];
+                    }
+                }
+                break;
+            }
+            int parent = position == CommitGraph.NONE
+                    ? CommitGraph.NONE : graph.parent(position);
+            if (parent == CommitGraph.NONE) {
+                assign(result, owners, id);
+                break;
+            }
+            if (filters.mightChange(position, path)) {
+                String older = TreeNode.lookupFile(_objects,
+                        Commit.fromFile(_objects, graph.id(parent))
+                                .getFileSha1(), path);
+                if (older == null) {
+                    assign(result, owners, id);
+                    break;
+                } else if (!older.equals(blob)) {
+                    Diff.Lines before =
+                            new Diff.Lines(Blob.fromFile(_objects, older));
+                    int[] back = back(before, lines);
+                    int[] carried = new int[before.size()];
+                    Arrays.fill(carried, -1);
+                    for (int i = 0; i < owners.length; i += 1) {
+                        if (owners[i] < 0) {
+                            continue;
+                        } else if (back[i] < 0) {
+                            result[owners[i]] = id;
+                            left -= 1;
+                        } else {
+                            carried[back[i]] = owners[i];
+                        }
+                    }
+                    owners = carried;
+                    lines = before;
+                    blob = older;
+                }
+            }
+            position = parent;
+            id = graph.id(parent);
+        }
+        cache.remove(head);
+        cache.put(head, result);
+        writeCache(path, cache);
+        return result;
+    }
+
+    /** Return, for each line of AFTER, the index of the line of BEFORE
+     *  it is kept from, or -1 if it was added. */
+    private static int[] back(Diff.Lines before, Diff.Lines after) {
+        int[] back = new int[after.size()];
+        int a = 0, b = 0;
+        for (Diff.Edit edit : new Diff(before, after).edits()) {
+            while (b < edit.bStart) {
+                back[b++] = a++;
+            }
+            while (b < edit.bEnd) {
+                back[b++] = -1;
+            }
+            a = edit.aEnd;
+        }
+        while (b < back.length) {
+            back[b++] = a++;
+        }
+        return back;
+    }
+
+    /** Give ID to each line of RESULT that OWNERS still carries. */
+    private static void assign(String[] result, int[] owners, String id) {
+        for (int owner : owners) {
+            if (owner >= 0) {
+                result[owner] = id;
+            }
+        }
+    }
+
+    /** Return the cache file of PATH. */
+    private File cacheFile(String path) {
+        return Utils.join(_cache, Utils.sha1(path));
+    }
+
+    /** Return the cached results for PATH, keyed by commit id, oldest
+     *  first, or none if there is no readable cache file. Each result
+     *  is stored as the distinct commits it names followed by the index
+     *  among them of the owner of each line. */
+    private LinkedHashMap<String, String[]> readCache(String path) {
+        LinkedHashMap<String, String[]> cache = new LinkedHashMap<>();
+        File file = cacheFile(path);
+        if (!file.isFile()) {
+            return cache;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                return cache;
+            }
+            byte[] bytes = new byte[Pack.ID_BYTES];
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                in.readFully(bytes);
+                String id = Pack.toHex(bytes);
+                String[] commits = new String[in.readInt()];
+                for (int i = 0; i < commits.length; i += 1) {
+                    in.readFully(bytes);
+                    commits[i] = Pack.toHex(bytes);
+                }
+                String[] result = new String[in.readInt()];
+                for (int i = 0; i < result.length; i += 1) {
+                    result[i] = commits[in.readInt()];
+                }
+                cache.put(id, result);
+            }
+        } catch (IOException | ArrayIndexOutOfBoundsException excp) {
+            cache.clear();
+        }
+        return cache;
+    }
+
+    /** Write CACHE as the cache file of PATH, keeping only its newest
+     *  CACHE_ENTRIES results, through a temporary file renamed into
+     *  place. */
+    private void writeCache(String path, Map<String, String[]> cache)
+            throws IOException {
+        Iterator<String> oldest = cache.keySet().iterator();
+        while (cache.size() > CACHE_ENTRIES) {
+            oldest.next();
+            oldest.remove();
+        }
+        _cache.mkdirs();
+        File file = cacheFile(path);
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(cache.size());
+            for (Map.Entry<String, String[]> entry : cache.entrySet()) {
+                out.write(Pack.toBytes(entry.getKey()));
+                HashMap<String, Integer> numbers = new HashMap<>();
+                List<String> commits = new ArrayList<>();
+                for (String owner : entry.getValue()) {
+                    if (numbers.putIfAbsent(owner, commits.size()) == null) {
+                        commits.add(owner);
+                    }
+                }
+                out.writeInt(commits.size());
+                for (String commit : commits) {
+                    out.write(Pack.toBytes(commit));
+                }
+                out.writeInt(entry.getValue().length);
+                for (String owner : entry.getValue()) {
+                    out.writeInt(numbers.get(owner));
+                }
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** The object directory read. */
+    private final File _objects;
+    /** The directory of the cache files, one per path blamed. */
+    private final File _cache;
+}
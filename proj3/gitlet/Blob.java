@@ -1,17 +1,33 @@
 package gitlet;
 import java.io.File;
 import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
-/** Blob class which point to a file.
+/** Blob class which point to a file. Contents are never held whole:
+ *  they are hashed through a memory-mapped window and copied between
+ *  the working directory and the object directory channel to channel.
  * @author Huixuan Lin
  */
 public class Blob {
+    /** Length of the window of a file mapped at once while hashing. */
+    static final long MAP_WINDOW = 1L << 26;
+
     /** Constructor of Blob which point to file with NAME. */
     public Blob(String name) {
-        _name = name;
-        _content = Utils.readContents(Utils.join(Main.CWD, name));
-        _fileSha1 = Utils.sha1(_content);
+        this(name, hash(Utils.join(Main.CWD, name)));
+    }
 
+    /** Constructor of Blob which point to file with NAME, whose content
+     *  is already known to have SHA1 code. */
+    public Blob(String name, String sha1) {
+        _name = name;
+        _fileSha1 = sha1;
     }
 
     /**
@@ -19,57 +35,161 @@ public class Blob {
      * @param  sha1 of blob to load
      * @return content of the file to which this blob point
      */
-    public static String fromFile(String sha1) {
-        File blobFile = Utils.join(Main.OBJECT, sha1);
-        if (!blobFile.exists()) {
+    public static byte[] fromFile(String sha1) {
+        return fromFile(Main.OBJECT, sha1);
+    }
+
+    /** Reads in a blob with SHA1 code from object directory DIR.
+     * @return content of the file to which this blob point */
+    public static byte[] fromFile(File dir, String sha1) {
+        return ObjectDatabase.forObjects(dir).blob(sha1);
+    }
+
+    /** Return the SHA1 code of the content of FILE, hashed one mapped
+     *  window at a time. */
+    public static String hash(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            long size = channel.size();
+            for (long start = 0; start < size; start += MAP_WINDOW) {
+                MappedByteBuffer window = channel.map(
+                        FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(MAP_WINDOW, size - start));
+                md.update(window);
+            }
+            return Pack.toHex(md.digest());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException(
-                    "No blob file with that name found.");
+                    "System does not support SHA-1");
         }
-        return Utils.readContentsAsString(blobFile);
     }
 
+    /** Write the blob with SHA1 code from object directory DIR into
+     *  TARGET. Loose blobs are copied channel to channel, and chunked
+     *  ones chunk by chunk. */
+    public static void checkout(File dir, String sha1,
+                                File target) throws IOException {
+        File blobFile = Utils.join(dir, sha1);
+        if (!blobFile.isFile()) {
+            ChunkStore chunks = ChunkStore.forObjects(dir);
+            if (chunks.has(sha1)) {
+                chunks.checkout(sha1, target);
+            } else {
+                Utils.writeContents(target, fromFile(dir, sha1));
+            }
+            return;
+        }
+        try (FileChannel in = FileChannel.open(blobFile.toPath());
+             FileChannel out = FileChannel.open(target.toPath(),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            transfer(in, out);
+        }
+    }
 
-    /** Get content of the file this blob point to.
-     * @return Content of the file
-     * */
-    public static byte[] getContent() {
-        return _content;
+    /** Write the blob with SHA1 code into TARGET. */
+    public static void checkout(String sha1, File target) throws IOException {
+        checkout(Main.OBJECT, sha1, target);
+    }
+
+    /** Copy the blob with SHA1 code from object directory FROM into
+     *  object directory TO, unless TO already has it. */
+    public static void copy(File from, File to,
+                            String sha1) throws IOException {
+        if (exists(to, sha1)) {
+            return;
+        }
+        ChunkStore chunks = ChunkStore.forObjects(from);
+        if (chunks.has(sha1)) {
+            chunks.copy(ChunkStore.forObjects(to), sha1);
+            return;
+        }
+        File temp = Utils.join(to, sha1 + ".tmp");
+        checkout(from, sha1, temp);
+        Files.move(temp.toPath(), Utils.join(to, sha1).toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Return true if object directory DIR holds an object with SHA1. */
+    public static boolean exists(File dir, String sha1) {
+        return Utils.join(dir, sha1).isFile()
+                || Pack.contains(Pack.dirFor(dir), sha1)
+                || ChunkStore.forObjects(dir).has(sha1);
     }
 
     /** Get SHA1 code of the file this blob point to.
      * @return sha1 code of the file
      * */
-    public static String getSha1() {
+    public String getSha1() {
         return _fileSha1;
     }
 
     /** Get name of the the file this blob point to.
      * @return name of this file
      * */
-    public static String getName() {
+    public String getName() {
         return _name;
     }
 
-    /** Save file content as a file which name is sha1 code. */
-    public static void saveContent() throws IOException {
-        Utils.join(Main.OBJECT, _fileSha1).createNewFile();
-        Utils.writeContents(Utils.join(Main.OBJECT, _fileSha1), _content);
+    /** Save file content as a file which name is sha1 code. The file is
+     *  copied to a temporary object and renamed, so a reader never sees
+     *  a partial object. Large files are stored as chunks instead. */
+    public void saveContent() throws IOException {
+        if (exists(Main.OBJECT, _fileSha1)) {
+            return;
+        }
+        File file = Utils.join(Main.CWD, _name);
+        if (file.length() >= ChunkStore.CHUNK_THRESHOLD) {
+            ChunkStore.forObjects(Main.OBJECT).save(_fileSha1, file);
+            return;
+        }
+        File temp = Utils.join(Main.OBJECT, _fileSha1 + ".tmp");
+        try (FileChannel in = FileChannel.open(
+                Utils.join(Main.CWD, _name).toPath());
+             FileChannel out = FileChannel.open(temp.toPath(),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            transfer(in, out);
+        }
+        Files.move(temp.toPath(), Utils.join(Main.OBJECT, _fileSha1).toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Save CONTENT, which no working file holds, as a blob in object
+     *  directory DIR, unless DIR already has it.
+     *  @return the sha1 code of CONTENT */
+    public static String save(File dir, byte[] content) throws IOException {
+        String sha1 = Utils.sha1(content);
+        if (!exists(dir, sha1)) {
+            File temp = Utils.join(dir, sha1 + ".tmp");
+            Utils.writeContents(temp, content);
+            Files.move(temp.toPath(), Utils.join(dir, sha1).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        return sha1;
     }
 
     /** Save file with FILENAME into file with SHA1 code
      * into current working directory. */
     public static void saveContent(String fileName,
                                    String sha1) throws IOException {
-        Utils.join(Main.OBJECT, sha1).createNewFile();
-        Utils.writeContents(Utils.join(Main.CWD, fileName),
-                Utils.readContentsAsString(Utils.join(Main.OBJECT, sha1)));
+        checkout(sha1, Utils.join(Main.CWD, fileName));
+    }
+
+    /** Copy all of IN to OUT. */
+    private static void transfer(FileChannel in,
+                                 FileChannel out) throws IOException {
+        long size = in.size();
+        for (long done = 0; done < size;) {
+            done += in.transferTo(done, size - done, out);
+        }
     }
 
-    /** Content of the file this blob point to. */
-    private static byte[] _content;
     /** SHA1 code fo the content of the file this blob point to. */
-    private static String _fileSha1;
+    private final String _fileSha1;
     /** Name of the file this blob point to. */
-    private static String _name;
+    private final String _name;
 
 }
@@ -1,13 +1,33 @@
 package gitlet;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.Serializable;
+import java.io.RandomAccessFile;
 import java.util.LinkedList;
 
-/** Class of branch which user can checkout.
+/** Class of branch which user can checkout. A branch is stored as its
+ *  head, the number of its commits and its name, all at fixed offsets
+ *  but the name, then the ids of its commits. Reading a branch reads
+ *  only the front of its file: the ids are read when first asked for,
+ *  and commits added to a branch whose ids were not read are appended
+ *  to its file in place. Only as many ids as the front counts are
+ *  read, so ids appended by a save that stopped before updating the
+ *  front are ignored.
  * @author Huixuan Lin
  */
-public class Branch implements Serializable {
+public class Branch {
+
+    /** Magic number at the front of a branch file. */
+    static final int MAGIC = 0x47425231;
+    /** Offset of the head, followed by the number of commits, in a
+     *  branch file. */
+    static final int HEAD_AT = StateCodec.HEADER;
+
     /** Constructor of branch with NAME. */
     Branch(String name) {
         _name = name;
@@ -33,12 +53,54 @@ public class Branch implements Serializable {
     public void copy(Branch branch) {
         _head = branch.getHead();
         _commits = branch.getCommits();
+        _added.clear();
     }
 
     /** Save a branch to a file as future use. */
     public void saveBranch() throws IOException {
-        Utils.join(Main.BRANCH, _name).createNewFile();
-        Utils.writeObject(Utils.join(Main.BRANCH, _name), this);
+        saveBranch(Utils.join(Main.BRANCH, _name));
+    }
+
+    /** Save this branch to FILE. Unless its ids have been read, a
+     *  branch saved to the file it was read from only has its new ids
+     *  appended there and then its head and number of commits written
+     *  over in one write, so that the file holds the old branch or the
+     *  new one whenever the save stops. */
+    public void saveBranch(File file) throws IOException {
+        if (_commits == null && file.equals(_file)
+                && file.length() == _end) {
+            if (_added.isEmpty() && _head.equals(_savedHead)) {
+                return;
+            }
+            ByteArrayOutputStream ids = new ByteArrayOutputStream();
+            for (String id : _added) {
+                ids.writeBytes(Pack.toBytes(id));
+            }
+            ByteArrayOutputStream front = new ByteArrayOutputStream();
+            DataOutputStream frontOut = new DataOutputStream(front);
+            writeHead(frontOut, _head);
+            frontOut.writeInt(_size + _added.size());
+            try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+                out.seek(_end);
+                out.write(ids.toByteArray());
+                _end = out.getFilePointer();
+                out.seek(HEAD_AT);
+                out.write(front.toByteArray());
+            }
+            _size += _added.size();
+            _added.clear();
+        } else {
+            LinkedList<String> commits = getCommits();
+            StateCodec.write(file, MAGIC, out -> {
+                writeHead(out, _head);
+                out.writeInt(commits.size());
+                out.writeUTF(_name);
+                for (String id : commits) {
+                    out.write(Pack.toBytes(id));
+                }
+            });
+        }
+        _savedHead = _head;
     }
 
     /** Reads in and deserializes current branch.
@@ -59,8 +121,28 @@ public class Branch implements Serializable {
             throw new IllegalArgumentException(
                     "No branch file with that name found.");
         }
-        return Utils.readObject(Utils.join(Main.
-                BRANCH, branchName), Branch.class);
+        return fromFile(Utils.join(Main.BRANCH, branchName));
+    }
+
+    /** Reads in the front of the branch saved in FILE, leaving the ids
+     *  of its commits to be read when asked for.
+     * @return The branch read. */
+    public static Branch fromFile(File file) {
+        try (DataInputStream in = StateCodec.open(file, MAGIC, "branch")) {
+            String head = readHead(in);
+            int size = in.readInt();
+            Branch branch = new Branch(in.readUTF(), head);
+            branch._commits = null;
+            branch._file = file;
+            branch._size = size;
+            branch._savedHead = head;
+            branch._idsAt = HEAD_AT + 1 + Pack.ID_BYTES + 4
+                    + 2 + utfLength(branch._name);
+            branch._end = branch._idsAt + (long) size * Pack.ID_BYTES;
+            return branch;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException("Corrupt branch file.");
+        }
     }
 
     /** Get the name of this branch.
@@ -78,12 +160,15 @@ public class Branch implements Serializable {
     /** Change the head of this branch with HEAD. */
     public void changeHead(String head) {
         _head = head;
-        Utils.writeContents(Utils.join(Main.BRANCH, _name), head);
     }
 
     /** Add commit with COMMITID under this branch. */
     public void addCommit(String commitId) {
-        _commits.add(commitId);
+        if (_commits == null) {
+            _added.add(commitId);
+        } else {
+            _commits.add(commitId);
+        }
         changeHead(commitId);
     }
 
@@ -96,36 +181,99 @@ public class Branch implements Serializable {
 
     /** Add COMMITS under this branch. */
     public void addCommits(LinkedList<String> commits) throws IOException {
-        _commits.addAll(commits);
+        getCommits().addAll(commits);
         saveBranch();
     }
 
     /** Get the SHA1 code of commit at INDEX.
      * @return the sha1 code fo commit. */
     public String getCommit(int index) {
-        return _commits.get(index);
+        return getCommits().get(index);
     }
     /** Get the collection of SHA1 code of commits under this branch.
      * @return collection of commits this branch has. */
     public LinkedList<String> getCommits() {
+        if (_commits == null) {
+            _commits = readCommits();
+            _commits.addAll(_added);
+            _added.clear();
+        }
         return _commits;
     }
 
     /** Return true if this branch contain commit with COMMITID. */
     public boolean contains(String commitId) {
-        return _commits.contains(commitId);
+        return getCommits().contains(commitId);
     }
 
     /** Get the length of this branch.
      * @return the number of commit this branch has. */
     public int size() {
-        return _commits.size();
+        return _commits == null ? _size + _added.size() : _commits.size();
+    }
+
+    /** Return the ids of the commits saved in the file this branch was
+     *  read from. */
+    private LinkedList<String> readCommits() {
+        LinkedList<String> commits = new LinkedList<>();
+        try (RandomAccessFile in = new RandomAccessFile(_file, "r")) {
+            byte[] ids = new byte[_size * Pack.ID_BYTES];
+            in.seek(_idsAt);
+            in.readFully(ids);
+            byte[] id = new byte[Pack.ID_BYTES];
+            for (int i = 0; i < _size; i += 1) {
+                System.arraycopy(ids, i * Pack.ID_BYTES, id, 0, id.length);
+                commits.add(Pack.toHex(id));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException("Corrupt branch file.");
+        }
+        return commits;
+    }
+
+    /** Return the length of NAME in the modified UTF-8 of writeUTF. */
+    private static int utfLength(String name) {
+        int length = 0;
+        for (int i = 0; i < name.length(); i += 1) {
+            char c = name.charAt(i);
+            length += c >= 1 && c <= 0x7f ? 1 : c <= 0x7ff ? 2 : 3;
+        }
+        return length;
+    }
+
+    /** Write HEAD, which may be empty, to OUT in a fixed length. */
+    private static void writeHead(DataOutput out, String head)
+            throws IOException {
+        out.writeBoolean(!head.isEmpty());
+        out.write(head.isEmpty() ? new byte[Pack.ID_BYTES]
+                : Pack.toBytes(head));
+    }
+
+    /** Return a head written by writeHead from IN. */
+    private static String readHead(DataInput in) throws IOException {
+        boolean present = in.readBoolean();
+        byte[] bytes = new byte[Pack.ID_BYTES];
+        in.readFully(bytes);
+        return present ? Pack.toHex(bytes) : "";
     }
 
     /** The name of this branch. */
     private String _name;
     /** The SHA1 code of the commit at the front of the this branch. */
     private String _head = "";
-    /** Collection of the SHA1 code of commits under this branch. */
+    /** Collection of the SHA1 code of commits under this branch, or
+     *  null until those saved are read. */
     private LinkedList<String> _commits = new LinkedList<>();
+    /** Ids of commits added while _commits is null. */
+    private LinkedList<String> _added = new LinkedList<>();
+    /** The file this branch was read from, or null. */
+    private File _file;
+    /** Number of ids saved in _file. */
+    private int _size;
+    /** Offset of the first id in _file. */
+    private long _idsAt;
+    /** Length of _file as last read or written. */
+    private long _end;
+    /** The head last read or saved. */
+    private String _savedHead;
 }
@@ -0,0 +1,314 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** A single file holding branch tips and the commits, trees and blobs
+ *  they need. It starts with a header naming the tips and indexing
+ *  every object by id, type, offset and length; the objects follow one
+ *  after another, commits parents first; and the SHA-1 of everything
+ *  before it ends the file. A bundle is written and read sequentially,
+ *  so it can carry history where another repository cannot be reached.
+ *  @author Huixuan Lin
+ */
+public class Bundle {
+
+    /** Magic number at the front of a bundle. */
+    static final int MAGIC = 0x474c4231;
+    /** Type of a commit entry. */
+    static final byte COMMIT = 0;
+    /** Type of a tree entry. */
+    static final byte TREE = 1;
+    /** Type of a blob entry. */
+    static final byte BLOB = 2;
+
+    /** Constructor of the bundle in FILE, whose header has been read. */
+    private Bundle(File file) {
+        _file = file;
+    }
+
+    /** Write into FILE a bundle of the commits TIPS, mapping names to
+     *  commit ids, with all their history, read from object directory
+     *  OBJECTDIR.
+     *  @return the number of objects written */
+    public static int create(File file, File objectDir,
+                             Map<String, String> tips) throws IOException {
+        Transfer transfer = new Transfer(objectDir, null);
+        for (String tip : tips.values()) {
+            transfer.want(tip);
+        }
+        Bundle bundle = new Bundle(file);
+        bundle._tips.putAll(tips);
+        for (Commit commit : transfer.commits()) {
+            bundle.addEntry(commit.getCommitSha1(), COMMIT);
+        }
+        for (String id : transfer.trees()) {
+            bundle.addEntry(id, TREE);
+        }
+        for (String id : transfer.blobs()) {
+            bundle.addEntry(id, BLOB);
+        }
+        bundle.write(objectDir);
+        return bundle._ids.size();
+    }
+
+    /** Return the bundle in FILE, after checking its checksum. */
+    public static Bundle open(File file) throws IOException {
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("No bundle file found.");
+        }
+        Bundle bundle = new Bundle(file);
+        try (FileChannel in = FileChannel.open(file.toPath())) {
+            long body = in.size() - Pack.ID_BYTES;
+            if (body < 0) {
+                throw new IllegalArgumentException("Corrupt bundle.");
+            }
+            byte[] expected = new byte[Pack.ID_BYTES];
+            in.read(ByteBuffer.wrap(expected), body);
+            if (!Arrays.equals(expected, digest(in, body))) {
+                throw new IllegalArgumentException("Corrupt bundle.");
+            }
+            in.position(0);
+            bundle.readHeader(new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(in))));
+        }
+        return bundle;
+    }
+
+    /** Return the tips of this bundle, mapping names to commit ids. */
+    public Map<String, String> tips() {
+        return _tips;
+    }
+
+    /** Return the ids of the commits of this bundle, parents first. */
+    public List<String> commits() {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < _ids.size(); i += 1) {
+            if (_types.get(i) == COMMIT) {
+                result.add(_ids.get(i));
+            }
+        }
+        return result;
+    }
+
+    /** Copy every object of this bundle that object directory OBJECTDIR
+     *  lacks into it, as one pack with blobs too large to pack left
+     *  loose, and add the commits copied to its commit graph.
+     *  @return the number of objects copied */
+    public int unbundle(File objectDir) throws IOException {
+        LinkedHashMap<String, Integer> packed = new LinkedHashMap<>();
+        List<Commit> commits = new ArrayList<>();
+        int copied = 0;
+        try (FileChannel in = FileChannel.open(_file.toPath())) {
+            for (int i = 0; i < _ids.size(); i += 1) {
+                String id = _ids.get(i);
+                if (Transfer.has(objectDir, id)) {
+                    continue;
+                } else if (_lengths.get(i) > Pack.BIG_FILE_THRESHOLD) {
+                    copyLoose(in, i, objectDir);
+                } else {
+                    packed.put(id, i);
+                }
+                if (_types.get(i) == COMMIT) {
+                    commits.add(Commit.fromBytes(read(in, i), objectDir));
+                }
+                copied += 1;
+            }
+            if (!packed.isEmpty()) {
+                Pack.write(Pack.dirFor(objectDir),
+                        new ArrayList<>(packed.keySet()),
+                        id -> read(in, packed.get(id)));
+            }
+        }
+        for (Commit commit : commits) {
+            CommitGraph.forObjects(objectDir).add(commit);
+        }
+        return copied;
+    }
+
+    /** Add the object with ID and TYPE to the index of this bundle. */
+    private void addEntry(String id, byte type) {
+        _ids.add(id);
+        _types.add(type);
+    }
+
+    /** Write this bundle, reading its objects from OBJECTDIR. Loose
+     *  objects and chunked blobs are copied into it without being read
+     *  whole. The header is written with the lengths of objects once
+     *  they are known. */
+    private void write(File objectDir) throws IOException {
+        File temp = new File(_file.getPath() + ".tmp");
+        ObjectDatabase source = ObjectDatabase.forObjects(objectDir);
+        ChunkStore chunks = ChunkStore.forObjects(objectDir);
+        try (FileChannel out = FileChannel.open(temp.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.READ,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int i = 0; i < _ids.size(); i += 1) {
+                _offsets.add(0L);
+                _lengths.add(0L);
+            }
+            long offset = header().length;
+            out.position(offset);
+            for (int i = 0; i < _ids.size(); i += 1) {
+                File loose = Utils.join(objectDir, _ids.get(i));
+                long length;
+                if (loose.isFile()) {
+                    try (FileChannel in = FileChannel.open(loose.toPath())) {
+                        length = in.size();
+                        for (long done = 0; done < length;) {
+                            done += in.transferTo(done, length - done, out);
+                        }
+                    }
+                } else if (chunks.has(_ids.get(i))) {
+                    length = chunks.transferTo(_ids.get(i), out);
+                } else {
+                    byte[] bytes = source.read(_ids.get(i));
+                    length = bytes.length;
+                    out.write(ByteBuffer.wrap(bytes));
+                }
+                _offsets.set(i, offset);
+                _lengths.set(i, length);
+                offset += length;
+            }
+            out.write(ByteBuffer.wrap(header()), 0);
+            byte[] checksum = digest(out, offset);
+            out.write(ByteBuffer.wrap(checksum), offset);
+        }
+        Files.move(temp.toPath(), _file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Return the header of this bundle: the magic number, the tips as
+     *  names and ids, and the index of objects. */
+    private byte[] header() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(_tips.size());
+        for (Map.Entry<String, String> tip : _tips.entrySet()) {
+            out.writeUTF(tip.getKey());
+            out.write(Pack.toBytes(tip.getValue()));
+        }
+        out.writeInt(_ids.size());
+        for (int i = 0; i < _ids.size(); i += 1) {
+            out.write(Pack.toBytes(_ids.get(i)));
+            out.writeByte(_types.get(i));
+            out.writeLong(_offsets.get(i));
+            out.writeLong(_lengths.get(i));
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Read the header of this bundle from IN. */
+    private void readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a bundle.");
+        }
+        byte[] id = new byte[Pack.ID_BYTES];
+        for (int i = in.readInt(); i > 0; i -= 1) {
+            String name = in.readUTF();
+            in.readFully(id);
+            _tips.put(name, Pack.toHex(id));
+        }
+        for (int i = in.readInt(); i > 0; i -= 1) {
+            in.readFully(id);
+            _ids.add(Pack.toHex(id));
+            _types.add(in.readByte());
+            _offsets.add(in.readLong());
+            _lengths.add(in.readLong());
+        }
+    }
+
+    /** Return the content of the INDEXth object, read from IN. */
+    private byte[] read(FileChannel in, int index) {
+        try {
+            ByteBuffer buffer =
+                    ByteBuffer.allocate(Math.toIntExact(_lengths.get(index)));
+            long position = _offsets.get(index);
+            while (buffer.hasRemaining()) {
+                int read = in.read(buffer, position);
+                if (read < 0) {
+                    throw new IllegalArgumentException("Corrupt bundle.");
+                }
+                position += read;
+            }
+            return buffer.array();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Copy the INDEXth object from IN into object directory OBJECTDIR
+     *  as a loose object. */
+    private void copyLoose(FileChannel in, int index, File objectDir)
+            throws IOException {
+        String id = _ids.get(index);
+        File temp = Utils.join(objectDir, id + ".tmp");
+        try (FileChannel out = FileChannel.open(temp.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long start = _offsets.get(index), length = _lengths.get(index);
+            for (long done = 0; done < length;) {
+                done += in.transferTo(start + done, length - done, out);
+            }
+        }
+        Files.move(temp.toPath(), Utils.join(objectDir, id).toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Return the SHA-1 of the first LENGTH bytes of CHANNEL. */
+    private static byte[] digest(FileChannel channel, long length)
+            throws IOException {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            for (long position = 0; position < length;) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(),
+                        length - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    break;
+                }
+                buffer.flip();
+                md.update(buffer);
+                position += read;
+            }
+            return md.digest();
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException(
+                    "System does not support SHA-1");
+        }
+    }
+
+    /** The file of this bundle. */
+    private final File _file;
+    /** Tips of this bundle, mapping names to commit ids. */
+    private final Map<String, String> _tips = new LinkedHashMap<>();
+    /** Ids of the objects of this bundle, in the order they are stored. */
+    private final List<String> _ids = new ArrayList<>();
+    /** Types of the objects of this bundle. */
+    private final List<Byte> _types = new ArrayList<>();
+    /** Offsets in the file of the objects of this bundle. */
+    private final List<Long> _offsets = new ArrayList<>();
+    /** Lengths of the objects of this bundle. */
+    private final List<Long> _lengths = new ArrayList<>();
+}
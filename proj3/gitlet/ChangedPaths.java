@@ -0,0 +1,171 @@
+package gitlet;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+/** Changed-path filters of a commit graph. For each commit, in graph
+ *  order, a side file holds a Bloom filter of the paths whose entries
+ *  differ from those of its first parent, directories included, so a
+ *  walk after the history of one path need only read the commits whose
+ *  filters might hold it. A second file holds the offset of each
+ *  commit's filter. A commit changing too many paths has an empty
+ *  filter, which might hold any path.
+ *  @author Huixuan Lin
+ */
+public class ChangedPaths {
+
+    /** Number of bits of a filter per path it holds. */
+    static final int BITS_PER_PATH = 10;
+    /** Number of bits set for each path. */
+    static final int HASHES = 7;
+    /** Largest number of paths a filter holds. */
+    static final int MAX_PATHS = 512;
+    /** Smallest length of a filter in bytes. */
+    static final int MIN_BYTES = 8;
+
+    /** Constructor of the filters stored in FILTERS with offsets
+     *  in OFFSETS. */
+    public ChangedPaths(File filters, File offsets) {
+        _filters = filters;
+        _offsets = offsets;
+    }
+
+    /** Return the changed-path filters of the repository whose object
+     *  directory is OBJECTDIR. */
+    public static ChangedPaths forObjects(File objectDir) {
+        return forRepo(objectDir.getParentFile());
+    }
+
+    /** Return the changed-path filters of the repository REPO. */
+    public static ChangedPaths forRepo(File repo) {
+        return new ChangedPaths(Utils.join(repo, "changed-paths"),
+                Utils.join(repo, "changed-paths.idx"));
+    }
+
+    /** Record the commit at graph POSITION, whose root tree node is ROOT
+     *  and whose first parent's is PARENTROOT, or null if it has none,
+     *  both in object directory OBJECTS. Does nothing unless every
+     *  earlier commit of the graph is already recorded. */
+    public void add(int position, File objects, String parentRoot,
+                    String root) throws IOException {
+        if (size() != position) {
+            return;
+        }
+        Set<String> paths = new HashSet<>();
+        TreeNode.diff(objects, parentRoot, root, paths::add);
+        byte[] filter = new byte[0];
+        if (paths.size() <= MAX_PATHS) {
+            filter = new byte[Math.max(MIN_BYTES,
+                    (paths.size() * BITS_PER_PATH + 7) / 8)];
+            for (String path : paths) {
+                long hash = hash(path);
+                for (int i = 0; i < HASHES; i += 1) {
+                    int bit = bit(hash, i, filter.length * 8);
+                    filter[bit >>> 3] |= 1 << (bit & 7);
+                }
+            }
+        }
+        long offset = _filters.length();
+        try (FileOutputStream out = new FileOutputStream(_filters, true)) {
+            out.write(filter);
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(_offsets, true))) {
+            out.writeLong(offset);
+        }
+    }
+
+    /** Return false if the commit at graph POSITION certainly did not
+     *  change PATH, a file or directory, from its first parent. */
+    public boolean mightChange(int position, String path) {
+        map();
+        if (position >= _size) {
+            return true;
+        }
+        long start = _offsetData.getLong(8 * position);
+        long end = position + 1 < _size
+                ? _offsetData.getLong(8 * (position + 1))
+                : _filterData.capacity();
+        int length = (int) (end - start);
+        if (length == 0) {
+            return true;
+        }
+        long hash = hash(path);
+        for (int i = 0; i < HASHES; i += 1) {
+            int bit = bit(hash, i, length * 8);
+            if ((_filterData.get((int) start + (bit >>> 3))
+                    & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the number of commits recorded. */
+    public int size() {
+        return (int) (_offsets.length() / 8);
+    }
+
+    /** Map both files, unless they are already mapped. */
+    private void map() {
+        if (_offsetData != null) {
+            return;
+        }
+        _size = size();
+        _offsetData = map(_offsets);
+        _filterData = map(_filters);
+    }
+
+    /** Return the content of FILE, mapped, or nothing if it is
+     *  missing. */
+    private static ByteBuffer map(File file) {
+        if (!file.exists()) {
+            return ByteBuffer.allocate(0);
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            return channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the 64-bit hash of PATH: FNV-1a over its UTF-8 bytes,
+     *  with its bits mixed as by MurmurHash3's finalizer. */
+    static long hash(String path) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    /** Return the bit number I of a filter of BITS bits set for a path
+     *  with HASH, by double hashing its two halves. */
+    private static int bit(long hash, int i, int bits) {
+        int first = (int) hash, second = (int) (hash >>> 32) | 1;
+        return Math.floorMod(first + i * second, bits);
+    }
+
+    /** The file holding the filters. */
+    private final File _filters;
+    /** The file holding the offsets of the filters. */
+    private final File _offsets;
+    /** Content of _offsets, once mapped. */
+    private ByteBuffer _offsetData;
+    /** Content of _filters, once mapped. */
+    private ByteBuffer _filterData;
+    /** Number of commits recorded when the files were mapped. */
+    private int _size;
+}
@@ -0,0 +1,109 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Incremental checkout of a working directory. Given the files the
+ *  directory holds and the files it should hold, only paths that were
+ *  added, removed or changed between the two, or whose working copy no
+ *  longer matches what it should be, are written or deleted. Writes are
+ *  done on a pool of worker threads.
+ *  @author Huixuan Lin
+ */
+public class Checkout {
+
+    /** Largest number of threads files are written on. */
+    static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    /** Constructor of a checkout into WORKDIR of blobs from object
+     *  directory OBJECTDIR, keeping the stat cache INDEX of WORKDIR
+     *  up to date. */
+    public Checkout(File workDir, File objectDir, Index index) {
+        _workDir = workDir;
+        _objectDir = objectDir;
+        _index = index;
+    }
+
+    /** Change the working directory from holding the files of CURRENT
+     *  to holding the files of TARGET. Both map file names to blob ids.
+     *  Files of CURRENT that TARGET lacks are deleted, together with
+     *  directories left empty. Files whose entries in CURRENT or in the
+     *  stat cache differ from TARGET are written without being looked
+     *  at; only the rest are checked on disk. */
+    public void apply(Map<String, String> current,
+                      Map<String, String> target) throws IOException {
+        for (String name : current.keySet()) {
+            if (!target.containsKey(name)) {
+                delete(name);
+            }
+        }
+        List<String> changed = new ArrayList<>();
+        for (Map.Entry<String, String> entry : target.entrySet()) {
+            String name = entry.getKey(), sha1 = entry.getValue();
+            if (!sha1.equals(current.get(name))
+                    || !sha1.equals(_index.recorded(name))
+                    || !sha1.equals(_index.sha1(name))) {
+                changed.add(name);
+            }
+        }
+        _written = changed.size();
+        if (changed.isEmpty()) {
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.min(changed.size(), THREADS));
+        List<Future<Void>> results = new ArrayList<>();
+        for (String name : changed) {
+            results.add(pool.submit(() -> {
+                write(name, target.get(name));
+                return null;
+            }));
+        }
+        pool.shutdown();
+        for (Future<Void> result : results) {
+            Main.awaitResult(result);
+        }
+    }
+
+    /** Return the number of files written by the last apply. */
+    public int written() {
+        return _written;
+    }
+
+    /** Write the blob with SHA1 code into the working file NAME. */
+    private void write(String name, String sha1) throws IOException {
+        File target = Utils.join(_workDir, name);
+        target.getParentFile().mkdirs();
+        Blob.checkout(_objectDir, sha1, target);
+        _index.update(name, sha1);
+    }
+
+    /** Delete the working file NAME and the directories it leaves
+     *  empty. */
+    void delete(String name) {
+        File file = Utils.join(_workDir, name);
+        if (file.isFile()) {
+            file.delete();
+        }
+        _index.remove(name);
+        File dir = file.getParentFile();
+        while (dir != null && !dir.equals(_workDir) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
+    /** The working directory checked out into. */
+    private final File _workDir;
+    /** The object directory blobs are read from. */
+    private final File _objectDir;
+    /** Stat cache of _workDir. */
+    private final Index _index;
+    /** Number of files written by the last apply. */
+    private int _written;
+}
@@ -0,0 +1,71 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+/** Tests of the incremental checkout of a working directory.
+ *  @author Huixuan Lin
+ */
+public class CheckoutTest {
+
+    /** Modification time, in milliseconds, given to files that are
+     *  expected to be left alone. */
+    private static final long OLD = 1000000000000L;
+
+    /** Return the id of a blob with CONTENT saved in object directory
+     *  OBJECTS. */
+    private static String blob(File objects, String content)
+            throws IOException {
+        return Blob.save(objects, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void writesOnlyWhatChanged() throws IOException {
+        File dir = UnitTest.scratch();
+        try {
+            File objects = Utils.join(dir, "object");
+            File work = Utils.join(dir, "work");
+            objects.mkdir();
+            work.mkdir();
+            Index index = new Index(Utils.join(dir, "index"), work);
+            Checkout checkout = new Checkout(work, objects, index);
+
+            HashMap<String, String> first = new HashMap<>();
+            first.put("a.txt", blob(objects, "a"));
+            first.put("d/b.txt", blob(objects, "b"));
+            first.put("d/c.txt", blob(objects, "c"));
+            checkout.apply(new HashMap<>(), first);
+            assertEquals(3, checkout.written());
+            File a = Utils.join(work, "a.txt");
+            File b = Utils.join(work, "d", "b.txt");
+            File c = Utils.join(work, "d", "c.txt");
+            for (File file : new File[] {a, b, c}) {
+                assertTrue(file.setLastModified(OLD));
+            }
+
+            HashMap<String, String> second = new HashMap<>(first);
+            second.put("d/b.txt", blob(objects, "b2"));
+            second.remove("d/c.txt");
+            checkout.apply(first, second);
+            assertEquals(1, checkout.written());
+            assertEquals(OLD, a.lastModified());
+            assertNotEquals(OLD, b.lastModified());
+            assertEquals("b2", Utils.readContentsAsString(b));
+            assertFalse(c.exists());
+
+            Utils.writeContents(a, "edited");
+            assertTrue(a.setLastModified(OLD));
+            checkout.apply(second, second);
+            assertEquals(1, checkout.written());
+            assertEquals("a", Utils.readContentsAsString(a));
+        } finally {
+            UnitTest.delete(dir);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/** Store of large blobs cut into chunks at content-defined boundaries.
+ *  Boundaries are found by FastCDC: a gear rolling hash over the bytes,
+ *  cut where its top bits are zero, with a stricter mask before the
+ *  average chunk size and a looser one after, so that chunks keep close
+ *  to that size. Because a boundary depends only on nearby bytes, an
+ *  edit changes the chunks around it and no others. Each chunk is kept
+ *  once, in the chunks directory beside the object directory, named by
+ *  its SHA-1; a chunked blob is a manifest listing its chunk ids in
+ *  order, in the manifest directory, named by the blob id.
+ *  @author Huixuan Lin
+ */
+public class ChunkStore {
+
+    /** Smallest file stored chunked. */
+    static final long CHUNK_THRESHOLD = 1L << 20;
+    /** Smallest chunk, except for the last. */
+    static final int MIN_CHUNK = 1 << 14;
+    /** Size chunks are cut around. */
+    static final int AVERAGE_CHUNK = 1 << 16;
+    /** Largest chunk. */
+    static final int MAX_CHUNK = 1 << 18;
+    /** Mask of the hash bits that must be zero for a cut before the
+     *  average size: two more than the average size asks for. */
+    static final long MASK_SMALL = -1L << (64 - 18);
+    /** Mask of the hash bits that must be zero for a cut after the
+     *  average size: two less than the average size asks for. */
+    static final long MASK_LARGE = -1L << (64 - 14);
+
+    /** Constructor of the chunk store beside object directory
+     *  OBJECTDIR. */
+    public ChunkStore(File objectDir) {
+        _chunks = Utils.join(objectDir.getParentFile(), "chunks");
+        _manifests = Utils.join(objectDir.getParentFile(), "manifest");
+    }
+
+    /** Return the chunk store beside object directory OBJECTDIR. */
+    public static ChunkStore forObjects(File objectDir) {
+        return new ChunkStore(objectDir);
+    }
+
+    /** Return true if the blob with SHA1 code is stored chunked. */
+    public boolean has(String sha1) {
+        return Utils.join(_manifests, sha1).isFile();
+    }
+
+    /** Store the content of FILE, whose SHA1 code is known, as chunks,
+     *  reading it one chunk at a time and writing only chunks not
+     *  already stored. */
+    public void save(String sha1, File file) throws IOException {
+        if (has(sha1)) {
+            return;
+        }
+        _chunks.mkdirs();
+        _manifests.mkdirs();
+        StringBuilder manifest = new StringBuilder();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            Chunker chunker = new Chunker(in);
+            for (byte[] chunk = chunker.next(); chunk != null;
+                 chunk = chunker.next()) {
+                String id = Utils.sha1(chunk);
+                File target = Utils.join(_chunks, id);
+                if (!target.isFile()) {
+                    write(target, chunk);
+                }
+                manifest.append(id).append('\n');
+            }
+        }
+        write(Utils.join(_manifests, sha1),
+                manifest.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Return the ids of the chunks of the blob with SHA1 code, in
+     *  order. */
+    public List<String> manifest(String sha1) {
+        String text = Utils.readContentsAsString(
+                Utils.join(_manifests, sha1));
+        if (text.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return Arrays.asList(text.split("\n"));
+    }
+
+    /** Return the content of the chunked blob with SHA1 code. */
+    public byte[] read(String sha1) {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (String id : manifest(sha1)) {
+            content.writeBytes(Utils.readContents(Utils.join(_chunks, id)));
+        }
+        return content.toByteArray();
+    }
+
+    /** Write the chunked blob with SHA1 code into TARGET, copying it
+     *  chunk by chunk. */
+    public void checkout(String sha1, File target) throws IOException {
+        try (FileChannel out = FileChannel.open(target.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            transferTo(sha1, out);
+        }
+    }
+
+    /** Write the content of the chunked blob with SHA1 code to OUT,
+     *  copying it chunk by chunk.
+     *  @return the number of bytes written */
+    public long transferTo(String sha1, WritableByteChannel out)
+            throws IOException {
+        long length = 0;
+        for (String id : manifest(sha1)) {
+            try (FileChannel in = FileChannel.open(
+                    Utils.join(_chunks, id).toPath())) {
+                long size = in.size();
+                for (long done = 0; done < size;) {
+                    done += in.transferTo(done, size - done, out);
+                }
+                length += size;
+            }
+        }
+        return length;
+    }
+
+    /** Copy the chunked blob with SHA1 code into the store TO, with
+     *  only the chunks TO lacks. */
+    public void copy(ChunkStore to, String sha1) throws IOException {
+        if (to.has(sha1)) {
+            return;
+        }
+        to._chunks.mkdirs();
+        to._manifests.mkdirs();
+        for (String id : manifest(sha1)) {
+            File target = Utils.join(to._chunks, id);
+            if (!target.isFile()) {
+                write(target, Utils.readContents(Utils.join(_chunks, id)));
+            }
+        }
+        write(Utils.join(to._manifests, sha1),
+                Utils.readContents(Utils.join(_manifests, sha1)));
+    }
+
+    /** Write CONTENT into TARGET through a temporary file renamed into
+     *  place, so that a reader, or another thread storing the same
+     *  chunk, never sees it partly written. */
+    private static void write(File target, byte[] content)
+            throws IOException {
+        File temp = File.createTempFile(target.getName(), ".tmp",
+                target.getParentFile());
+        Utils.writeContents(temp, content);
+        Files.move(temp.toPath(), target.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Cutter of a stream into content-defined chunks. */
+    static class Chunker {
+        /** Constructor of the chunker of IN. */
+        Chunker(InputStream in) {
+            _in = in;
+        }
+
+        /** Return the next chunk, or null at the end of the stream. */
+        byte[] next() throws IOException {
+            fill();
+            if (_length == 0) {
+                return null;
+            }
+            int cut = cut(_buffer, _length);
+            byte[] chunk = Arrays.copyOf(_buffer, cut);
+            System.arraycopy(_buffer, cut, _buffer, 0, _length - cut);
+            _length -= cut;
+            return chunk;
+        }
+
+        /** Read into the buffer until it holds MAX_CHUNK bytes or the
+         *  stream ends. */
+        private void fill() throws IOException {
+            while (_length < MAX_CHUNK) {
+                int read = _in.read(_buffer, _length, MAX_CHUNK - _length);
+                if (read < 0) {
+                    return;
+                }
+                _length += read;
+            }
+        }
+
+        /** Return the length of the chunk at the start of the first
+         *  LENGTH bytes of DATA. */
+        static int cut(byte[] data, int length) {
+            if (length <= MIN_CHUNK) {
+                return length;
+            }
+            int end = Math.min(length, MAX_CHUNK);
+            int middle = Math.min(end, AVERAGE_CHUNK);
+            long hash = 0;
+            int i = MIN_CHUNK;
+            for (; i < middle; i += 1) {
+                hash = (hash << 1) + GEAR[data[i] & 0xff];
+                if ((hash & MASK_SMALL) == 0) {
+                    return i + 1;
+                }
+            }
+            for (; i < end; i += 1) {
+                hash = (hash << 1) + GEAR[data[i] & 0xff];
+                if ((hash & MASK_LARGE) == 0) {
+                    return i + 1;
+                }
+            }
+            return end;
+        }
+
+        /** The stream cut. */
+        private final InputStream _in;
+        /** Bytes read but not yet returned, at the front. */
+        private final byte[] _buffer = new byte[MAX_CHUNK];
+        /** Number of bytes in _buffer. */
+        private int _length;
+    }
+
+    /** Random value added to the rolling hash for each byte value. The
+     *  seed is fixed, since every repository must cut alike for chunks
+     *  to be shared. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x6769746c6574L);
+        for (int i = 0; i < GEAR.length; i += 1) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /** Directory of chunks. */
+    private final File _chunks;
+    /** Directory of manifests of chunked blobs. */
+    private final File _manifests;
+}
@@ -0,0 +1,132 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/** Tests of the content-defined chunking of large blobs.
+ *  @author Huixuan Lin
+ */
+public class ChunkStoreTest {
+
+    /** Return LENGTH random bytes drawn from a generator seeded with
+     *  SEED. */
+    private static byte[] randomBytes(long seed, int length) {
+        byte[] result = new byte[length];
+        new Random(seed).nextBytes(result);
+        return result;
+    }
+
+    /** Return the offsets at which DATA is cut into chunks, ending with
+     *  its length, after checking that the chunks make up DATA and keep
+     *  within the chunk sizes. */
+    private static List<Integer> cuts(byte[] data) throws IOException {
+        ChunkStore.Chunker chunker =
+                new ChunkStore.Chunker(new ByteArrayInputStream(data));
+        List<Integer> cuts = new ArrayList<>();
+        int offset = 0;
+        for (byte[] chunk = chunker.next(); chunk != null;
+             chunk = chunker.next()) {
+            assertTrue(chunk.length <= ChunkStore.MAX_CHUNK);
+            if (offset + chunk.length < data.length) {
+                assertTrue(chunk.length > ChunkStore.MIN_CHUNK);
+            }
+            for (int i = 0; i < chunk.length; i += 1) {
+                assertEquals(data[offset + i], chunk[i]);
+            }
+            offset += chunk.length;
+            cuts.add(offset);
+        }
+        assertEquals(data.length, offset);
+        return cuts;
+    }
+
+    /** Return DATA with INSERTED put in at offset AT. */
+    private static byte[] insert(byte[] data, int at, byte[] inserted) {
+        byte[] result = new byte[data.length + inserted.length];
+        System.arraycopy(data, 0, result, 0, at);
+        System.arraycopy(inserted, 0, result, at, inserted.length);
+        System.arraycopy(data, at, result, at + inserted.length,
+                data.length - at);
+        return result;
+    }
+
+    @Test
+    public void chunksMakeUpContent() throws IOException {
+        assertTrue(cuts(new byte[0]).isEmpty());
+        assertEquals(List.of(100), cuts(new byte[100]));
+        List<Integer> cuts = cuts(randomBytes(1, 4 << 20));
+        int average = (4 << 20) / cuts.size();
+        assertTrue("average chunk " + average,
+                average > ChunkStore.AVERAGE_CHUNK / 2
+                && average < ChunkStore.AVERAGE_CHUNK * 2);
+    }
+
+    @Test
+    public void boundariesStableAfterInsert() throws IOException {
+        byte[] data = randomBytes(2, 4 << 20);
+        int at = 3 << 19;
+        byte[] inserted = randomBytes(3, 1000);
+        List<Integer> before = cuts(data);
+        List<Integer> after = cuts(insert(data, at, inserted));
+
+        int kept = 0, moved = 0;
+        Set<Integer> shifted = new HashSet<>();
+        for (int cut : after) {
+            shifted.add(cut);
+        }
+        for (int cut : before) {
+            if (cut <= at) {
+                assertTrue("cut before the insert lost",
+                        shifted.contains(cut));
+                kept += 1;
+            } else if (shifted.contains(cut + inserted.length)) {
+                moved += 1;
+            }
+        }
+        int later = before.size() - kept;
+        assertTrue(kept > 0);
+        assertTrue("only " + moved + " of " + later + " later cuts kept",
+                moved >= later - 2);
+    }
+
+    @Test
+    public void editedBlobSharesChunks() throws IOException {
+        File repo = UnitTest.scratch();
+        try {
+            File objects = Utils.join(repo, "object");
+            objects.mkdir();
+            byte[] data = randomBytes(4, 2 << 20);
+            byte[] edited = insert(data, 1 << 20, randomBytes(5, 10));
+            File file = Utils.join(repo, "file");
+            ChunkStore store = ChunkStore.forObjects(objects);
+            Utils.writeContents(file, data);
+            store.save(Utils.sha1(data), file);
+            Utils.writeContents(file, edited);
+            store.save(Utils.sha1(edited), file);
+
+            assertArrayEquals(data, store.read(Utils.sha1(data)));
+            assertArrayEquals(edited, store.read(Utils.sha1(edited)));
+            Set<String> shared = new HashSet<>(
+                    store.manifest(Utils.sha1(data)));
+            shared.retainAll(store.manifest(Utils.sha1(edited)));
+            int stored = Utils.join(repo, "chunks").list().length;
+            assertEquals(store.manifest(Utils.sha1(data)).size()
+                    + store.manifest(Utils.sha1(edited)).size()
+                    - shared.size(), stored);
+            assertTrue(shared.size()
+                    >= store.manifest(Utils.sha1(data)).size() - 2);
+        } finally {
+            UnitTest.delete(repo);
+        }
+    }
+}
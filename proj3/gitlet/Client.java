@@ -0,0 +1,51 @@
+package gitlet;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+
+/** Thin client of the Daemon. Sends its arguments to the daemon of the
+ *  repository in the current directory and prints what the command
+ *  printed, or runs the command itself if no daemon is listening.
+ *  Usage: java gitlet.Client ARGS, with the ARGS of gitlet.Main.
+ *  @author Huixuan Lin
+ */
+public class Client {
+
+    /** Run the command ARGS through the daemon if there is one. */
+    public static void main(String... args) throws IOException {
+        SocketChannel channel = connect();
+        if (channel == null) {
+            Main.main(args);
+            return;
+        }
+        try (channel) {
+            DataOutputStream out =
+                    new DataOutputStream(Channels.newOutputStream(channel));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            channel.shutdownOutput();
+            Channels.newInputStream(channel).transferTo(System.out);
+            System.out.flush();
+        }
+    }
+
+    /** Return a connection to the daemon of the repository in the
+     *  current directory, or null if none is listening. */
+    static SocketChannel connect() {
+        if (!Daemon.socketFile().exists()) {
+            return null;
+        }
+        try {
+            return SocketChannel.open(
+                    UnixDomainSocketAddress.of(Daemon.socketFile().toPath()));
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+}
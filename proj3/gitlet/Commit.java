@@ -1,92 +1,115 @@
 package gitlet;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.Serializable;
-import java.util.Collection;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.HashSet;
 import java.util.LinkedList;
 
 /** The class of commit, point to a tree.
  * @author Huixuan Lin
  */
-public class Commit implements Serializable {
+public class Commit {
+
+    /** Constructor of an empty commit, filled in by fromBytes. */
+    private Commit() {
+    }
 
     /** Constructor of commit with tree TRACKED and MESSAGE.*/
     public Commit(Tree tracked, String message) {
         if (tracked == null) {
-            _tree = new Tree();
-            _treeSha1 = _tree.getSha1();
+            _treeSha1 = TreeNode.EMPTY;
             _files = new HashMap<>();
         } else {
-            _tree = tracked;
             _treeSha1 = tracked.getSha1();
             _files = tracked.getTracked();
         }
-        _ancestors = new HashSet<>();
         _message = message;
-        ZonedDateTime dateTime = ZonedDateTime.now();
-        DateTimeFormatter formatter
-                = DateTimeFormatter.ofPattern("EEE LLL d HH:mm:ss y Z");
-        _timeStamps = dateTime.format(formatter);
-        _commitSha1 = Utils.sha1(_treeSha1, message);
+        _timeStamps = ZonedDateTime.now().format(DATE_FORMAT);
+        _commitSha1 = hash();
+    }
+
+    /** Return the initial commit of a repository: no files, no parents
+     *  and the epoch, in UTC, as its time, so that every repository
+     *  starts from the same commit. */
+    public static Commit initial() {
+        Commit commit = new Commit(null, "initial commit");
+        commit._timeStamps = ZonedDateTime.ofInstant(Instant.EPOCH,
+                ZoneOffset.UTC).format(DATE_FORMAT);
+        commit._commitSha1 = commit.hash();
+        return commit;
     }
 
 
     /** Return true if this commit has track any files. */
     public boolean hasFile() {
-        return _files != null && !_files.isEmpty();
+        return !getFiles().isEmpty();
     }
     /** Return all committed file. Key is the
-     *  file name, value is the sha1 code for corresponding file. */
+     *  file name, value is the sha1 code for corresponding file.
+     *  Read from the tree nodes of this commit the first time. */
     public HashMap<String, String> getFiles() {
+        if (_files == null) {
+            _files = TreeNode.flatten(_source, _treeSha1);
+        }
         return _files;
     }
 
-    /** Return the tree to which this commit point to. */
-    public Tree getTree() {
-        return _tree;
-    }
-
     /** Return parent commit of this commit. */
     public Commit getParent() {
-        return _parent;
+        return _parentId.isEmpty() ? null : fromFile(_source, _parentId);
     }
 
     /** Return second parent commit of this commit. */
     public Commit getSecondParent() {
-        return _secondParent;
+        return _secondParentId.isEmpty()
+                ? null : fromFile(_source, _secondParentId);
+    }
+
+    /** Return the SHA1 code of parent commit, or "" if there is none. */
+    public String getParentId() {
+        return _parentId;
+    }
+
+    /** Return the SHA1 code of second parent commit,
+     *  or "" if there is none. */
+    public String getSecondParentId() {
+        return _secondParentId;
     }
 
     /** Set parent commit of this commit into PARENT. */
     public void setParent(Commit parent) {
-        _parent = parent;
+        _parentId = parent == null ? "" : parent.getCommitSha1();
+        _commitSha1 = hash();
     }
 
     /** Set second parent commit of this commit into SECONDPARENT. */
     public void setSecondParent(Commit secondParent) {
-        _secondParent = secondParent;
-    }
-
-    /** Add ANCESTORS to this commit. */
-    public void addAncestors(Collection<String> ancestors) {
-        _ancestors.addAll(ancestors);
+        _secondParentId = secondParent == null
+                ? "" : secondParent.getCommitSha1();
+        _commitSha1 = hash();
     }
 
-    /** Add ANCESTOR to this commit. */
-    public void addAncestor(String ancestor) {
-        _ancestors.add(ancestor);
+    /** Return the id this commit should have: the SHA1 code of its tree,
+     *  parents, message and time stamps, so commits repeating an earlier
+     *  tree and message on other parents or at another time differ. */
+    String hash() {
+        return Utils.sha1(_treeSha1, _parentId, _secondParentId,
+                _message, _timeStamps);
     }
 
-    /** Return the ancestors of this commit. */
-    public HashSet<String> getAncestors() {
-        return _ancestors;
-    }
     /** Return true if COMMIT is a ancestor of this. */
     public boolean isAncestor(String commit) {
-        return _ancestors.contains(commit);
+        return CommitGraph.forObjects(_source).
+                isAncestor(commit, _commitSha1);
     }
     /** Get commit message of this commit.
      * @return the commit message. */
@@ -105,6 +128,7 @@ public class Commit implements Serializable {
         return _commitSha1;
     }
 
+    /** Return the id of the root tree node of this commit. */
     public String getFileSha1() {
         return _treeSha1;
     }
@@ -125,42 +149,146 @@ public class Commit implements Serializable {
 
     /** Save a commit to a file as future use. */
     public void saveCommit() throws IOException {
-        Utils.join(Main.OBJECT, getCommitSha1()).createNewFile();
-        Utils.writeObject(Utils.join(Main.OBJECT, getCommitSha1()), this);
+        saveCommit(Main.OBJECT);
+    }
+
+    /** Save a commit to a file under object directory DIR, with the
+     *  tree nodes of its files if DIR lacks them. */
+    public void saveCommit(File dir) throws IOException {
+        if (!Blob.exists(dir, _treeSha1)) {
+            TreeNode.build(dir, getFiles());
+        }
+        boolean fresh = !exists(dir, getCommitSha1());
+        Utils.writeContents(Utils.join(dir, getCommitSha1()), toBytes());
+        ObjectDatabase.forObjects(dir).forget(getCommitSha1());
+        if (fresh) {
+            CommitGraph.forObjects(dir).add(this);
+        }
+    }
+
+    /** Return the compact binary record of this commit. Parents are
+     *  referenced by id, and files by the root of their tree nodes, so
+     *  the record grows with neither history nor the number of files. */
+    public byte[] toBytes() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            writeString(out, _commitSha1);
+            writeString(out, _treeSha1);
+            writeString(out, _parentId);
+            writeString(out, _secondParentId);
+            writeString(out, _message);
+            writeString(out, _timeStamps);
+            out.writeBoolean(_merged);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error serializing commit.");
+        }
+    }
+
+    /** Return the commit whose binary record is BYTES, read from
+     *  object directory SOURCE. */
+    static Commit fromBytes(byte[] bytes, File source) {
+        if (!isCommit(bytes)) {
+            throw new IllegalArgumentException("Not a commit record.");
+        }
+        try {
+            DataInputStream in =
+                    new DataInputStream(new ByteArrayInputStream(bytes));
+            in.readInt();
+            Commit commit = new Commit();
+            commit._source = source;
+            commit._commitSha1 = readString(in);
+            commit._treeSha1 = readString(in);
+            commit._parentId = readString(in);
+            commit._secondParentId = readString(in);
+            commit._message = readString(in);
+            commit._timeStamps = readString(in);
+            commit._merged = in.readBoolean();
+            return commit;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException("Corrupt commit record.");
+        }
+    }
+
+    /** Return true if BYTES hold the binary record of a commit. */
+    static boolean isCommit(byte[] bytes) {
+        return bytes.length >= 4 && ((bytes[0] & 0xff) << 24
+                | (bytes[1] & 0xff) << 16 | (bytes[2] & 0xff) << 8
+                | (bytes[3] & 0xff)) == MAGIC;
+    }
+
+    /** Write STR to OUT as its length followed by its UTF-8 bytes. */
+    private static void writeString(DataOutputStream out, String str)
+            throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Return a string written by writeString from IN. */
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
     }
 
     /** Reads in and deserializes a commit from a file with SHA1 code.
      * @param  sha1 of commit to load
      * @return Commit read from file */
     public static Commit fromFile(String sha1) {
-        File commitFile = Utils.join(Main.OBJECT, sha1);
-        if (!commitFile.exists()) {
-            throw new IllegalArgumentException(
-                    "No tree file with that name found.");
+        return fromFile(Main.OBJECT, sha1);
+    }
+
+    /** Reads in a commit with SHA1 code from object directory DIR.
+     * @return Commit read from file */
+    public static Commit fromFile(File dir, String sha1) {
+        return ObjectDatabase.forObjects(dir).commit(sha1);
+    }
+
+    /** Return true if object directory DIR holds a commit with SHA1. */
+    public static boolean exists(File dir, String sha1) {
+        File commitFile = Utils.join(dir, sha1);
+        if (!commitFile.isFile()) {
+            byte[] packed = Pack.find(Pack.dirFor(dir), sha1);
+            return packed != null && isCommit(packed);
+        }
+        try (DataInputStream in =
+                     new DataInputStream(new FileInputStream(commitFile))) {
+            return commitFile.length() >= 4 && in.readInt() == MAGIC;
+        } catch (IOException excp) {
+            return false;
         }
-        return Utils.readObject(commitFile, Commit.class);
     }
 
+    /** Magic number at the front of a commit record. */
+    static final int MAGIC = 0x474c4333;
+    /** Format of the time stamps of commits. */
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("EEE LLL d HH:mm:ss y Z");
+
     /** Collection of blobs. Key is the file name,
-     * value is the sha1 code for corresponding file. */
+     * value is the sha1 code for corresponding file; read from the
+     * tree nodes on demand. */
     private HashMap<String, String> _files;
-    /** The first parent commit of this. */
-    private Commit _parent;
-    /** The tree to which this commit point to. */
-    private Tree _tree;
-    /** The second parent commit of this. */
-    private Commit _secondParent;
+    /** SHA1 code of the first parent commit of this, or "". */
+    private String _parentId = "";
+    /** SHA1 code of the second parent commit of this, or "". */
+    private String _secondParentId = "";
     /** Commit message of this. */
     private String _message;
     /** The time when committing. */
     private String _timeStamps;
-    /** SHA1 code of tree to which this commit point to. */
+    /** Id of the root tree node of the files of this commit, over
+     *  their names and blob ids. */
     private String _treeSha1;
     /** SHA1 code of this commit. */
     private String _commitSha1;
     /** The state of merge. */
     private boolean _merged;
-    /** The sha1 code of ancestors of this commits. */
-    private HashSet<String> _ancestors;
+    /** Object directory this commit was read from. */
+    private File _source = Main.OBJECT;
 
 }
@@ -0,0 +1,276 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+/** The commit graph of a repository: one fixed-width record per commit
+ *  holding its id, the positions of its parents, its generation number
+ *  and its date. Records are appended parents first, so a commit's
+ *  generation is one more than the largest generation of its parents.
+ *  @author Huixuan Lin
+ */
+public class CommitGraph {
+
+    /** Length of one record: id, two parents, generation and date. */
+    static final int RECORD_BYTES = Pack.ID_BYTES + 4 + 4 + 4 + 8;
+    /** Parent position of a commit without that parent. */
+    static final int NONE = -1;
+    /** Flag of commits reachable from the first commit asked about. */
+    private static final byte FIRST = 1;
+    /** Flag of commits reachable from the second commit asked about. */
+    private static final byte SECOND = 2;
+    /** Number of records past those the commit index covers that are
+     *  scanned for an id before the index is brought up to date. */
+    static final int INDEX_SLACK = 64;
+
+    /** Constructor of the commit graph stored in FILE, of the commits
+     *  in object directory OBJECTS. */
+    public CommitGraph(File file, File objects) {
+        _file = file;
+        _objects = objects;
+        if (!file.exists() || file.length() == 0) {
+            _data = ByteBuffer.allocate(0);
+        } else {
+            try (FileChannel channel = FileChannel.open(file.toPath())) {
+                _data = channel.map(FileChannel.MapMode.READ_ONLY,
+                        0, channel.size());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        _size = _data.capacity() / RECORD_BYTES;
+    }
+
+    /** Return the commit graph of the repository whose object
+     *  directory is OBJECTDIR. */
+    public static CommitGraph forObjects(File objectDir) {
+        return new CommitGraph(
+                Utils.join(objectDir.getParentFile(), "commit-graph"),
+                objectDir);
+    }
+
+    /** Append COMMIT to the graph file, and record its ancestors in the
+     *  reachability index and the paths it changed from its first parent
+     *  in the changed-path filters. Its parents should already be in the
+     *  graph; a parent that is not is treated as absent. */
+    public void add(Commit commit) throws IOException {
+        int parent = position(commit.getParentId());
+        int second = position(commit.getSecondParentId());
+        int generation = 1 + Math.max(
+                parent == NONE ? 0 : generation(parent),
+                second == NONE ? 0 : generation(second));
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(_file, true)))) {
+            out.write(Pack.toBytes(commit.getCommitSha1()));
+            out.writeInt(parent);
+            out.writeInt(second);
+            out.writeInt(generation);
+            out.writeLong(date(commit.getTimeStamps()));
+        }
+        Reachability reachability =
+                Reachability.forRepo(_file.getParentFile());
+        reachability.update(this);
+        reachability.add(_size, parent, second);
+        String parentRoot = parent == NONE ? null
+                : Commit.fromFile(_objects, commit.getParentId()).
+                        getFileSha1();
+        ChangedPaths.forRepo(_file.getParentFile()).add(_size, _objects,
+                parentRoot, commit.getFileSha1());
+    }
+
+    /** Return true if the commit with id ANCESTOR is an ancestor of the
+     *  commit with id DESCENDANT. */
+    public boolean isAncestor(String ancestor, String descendant) {
+        Reachability reachability =
+                Reachability.forRepo(_file.getParentFile());
+        try {
+            reachability.update(this);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return reachability.isAncestor(position(ancestor),
+                position(descendant));
+    }
+
+    /** Return the number of commits in the graph. */
+    public int size() {
+        return _size;
+    }
+
+    /** Return the position of commit with SHA1 code, or NONE if it is
+     *  not in the graph. The records the commit index does not cover
+     *  yet are scanned, newest first; the rest are found through the
+     *  index. */
+    public int position(String sha1) {
+        if (sha1 == null || !Pack.isId(sha1)) {
+            return NONE;
+        }
+        byte[] id = Pack.toBytes(sha1);
+        byte[] probe = new byte[Pack.ID_BYTES];
+        CommitIndex index = index();
+        for (int i = _size - 1; i >= index.covered(); i -= 1) {
+            idAt(i, probe);
+            if (Arrays.equals(id, probe)) {
+                return i;
+            }
+        }
+        return index.position(id);
+    }
+
+    /** Return, in order, the ids of the commits starting with PREFIX, at
+     *  most LIMIT of them, or none if PREFIX is not a lower-case
+     *  hexadecimal prefix of an id. The records the commit index does
+     *  not cover yet are scanned; the rest are found through the
+     *  index. */
+    public List<String> matches(String prefix, int limit) {
+        CommitIndex index = index();
+        TreeSet<String> found = new TreeSet<>(index.matches(prefix, limit));
+        if (CommitIndex.isPrefix(prefix)) {
+            for (int i = index.covered(); i < _size; i += 1) {
+                String id = id(i);
+                if (id.startsWith(prefix)) {
+                    found.add(id);
+                }
+            }
+        }
+        List<String> result = new ArrayList<>(found);
+        return result.subList(0, Math.min(limit, result.size()));
+    }
+
+    /** Return the commit index of the repository, brought up to date
+     *  first if it covers more records than the graph holds or more
+     *  than INDEX_SLACK fewer. */
+    private CommitIndex index() {
+        if (_index == null) {
+            _index = new CommitIndex(
+                    Utils.join(_file.getParentFile(), "commit-index"));
+            if (_index.covered() > _size
+                    || _size - _index.covered() > INDEX_SLACK) {
+                _index.update(this);
+            }
+        }
+        return _index;
+    }
+
+    /** Return the id of the commit at POSITION. */
+    public String id(int position) {
+        byte[] id = new byte[Pack.ID_BYTES];
+        idAt(position, id);
+        return Pack.toHex(id);
+    }
+
+    /** Return the position of the first parent of the commit at
+     *  POSITION, or NONE. */
+    public int parent(int position) {
+        return _data.getInt(position * RECORD_BYTES + Pack.ID_BYTES);
+    }
+
+    /** Return the position of the second parent of the commit at
+     *  POSITION, or NONE. */
+    public int secondParent(int position) {
+        return _data.getInt(position * RECORD_BYTES + Pack.ID_BYTES + 4);
+    }
+
+    /** Return the generation number of the commit at POSITION. */
+    public int generation(int position) {
+        return _data.getInt(position * RECORD_BYTES + Pack.ID_BYTES + 8);
+    }
+
+    /** Return the date, in seconds since the epoch, of the commit
+     *  at POSITION. */
+    public long date(int position) {
+        return _data.getLong(position * RECORD_BYTES + Pack.ID_BYTES + 12);
+    }
+
+    /** Return the id of the best common ancestor of the commits with
+     *  ids FIRSTID and SECONDID, or null if they have none.
+     *  Walks down from both commits at once, always taking the commit
+     *  with the highest generation next, so the first commit reached
+     *  from both sides is a common ancestor that no other common
+     *  ancestor descends from. */
+    public String mergeBase(String firstId, String secondId) {
+        int first = position(firstId), second = position(secondId);
+        if (first == NONE || second == NONE) {
+            return null;
+        }
+        HashMap<Integer, Byte> flags = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>((a, b) -> {
+            int byGeneration = Integer.compare(generation(b), generation(a));
+            return byGeneration != 0 ? byGeneration : Integer.compare(b, a);
+        });
+        flags.put(first, FIRST);
+        flags.merge(second, SECOND, (a, b) -> (byte) (a | b));
+        queue.add(first);
+        queue.add(second);
+        HashSet<Integer> done = new HashSet<>();
+        while (!queue.isEmpty()) {
+            int next = queue.poll();
+            if (!done.add(next)) {
+                continue;
+            }
+            byte flag = flags.get(next);
+            if (flag == (FIRST | SECOND)) {
+                return id(next);
+            }
+            for (int parent : new int[] {parent(next), secondParent(next)}) {
+                if (parent == NONE) {
+                    continue;
+                }
+                byte old = flags.getOrDefault(parent, (byte) 0);
+                if ((old | flag) != old) {
+                    flags.put(parent, (byte) (old | flag));
+                    queue.add(parent);
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Copy the id of the commit at POSITION into ID. */
+    private void idAt(int position, byte[] id) {
+        ByteBuffer record = _data.duplicate();
+        record.position(position * RECORD_BYTES);
+        record.get(id);
+    }
+
+    /** Return TIMESTAMPS, as written in a commit, in seconds since the
+     *  epoch, or 0 if it cannot be read. */
+    private static long date(String timeStamps) {
+        try {
+            return ZonedDateTime.parse(timeStamps, DATE_FORMAT).
+                    toEpochSecond();
+        } catch (DateTimeParseException excp) {
+            return 0;
+        }
+    }
+
+    /** Format of the time stamps of commits. */
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("EEE LLL d HH:mm:ss y Z");
+
+    /** The file holding the graph. */
+    private final File _file;
+    /** The object directory of the commits of the graph. */
+    private final File _objects;
+    /** The records of the graph. */
+    private final ByteBuffer _data;
+    /** The number of records in the graph. */
+    private final int _size;
+    /** The commit index, or null until it is first needed. */
+    private CommitIndex _index;
+}
@@ -0,0 +1,257 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** The sorted index of the ids of the commits of a repository, used
+ *  to resolve abbreviated ids and to find the position of a commit in
+ *  the commit graph. After a header counting the commits of the commit
+ *  graph covered and the ids held comes a fan-out table, whose entry
+ *  for each byte value is the number of ids whose first byte is no
+ *  greater, then the ids in order, then the graph position of each id
+ *  in the same order. The ids starting with a prefix are found by a
+ *  binary search within the ids sharing its first byte. Commits added
+ *  to the graph since the index was written are merged into it once
+ *  more than CommitGraph.INDEX_SLACK of them have gathered; until then
+ *  the graph scans them itself.
+ *  @author Huixuan Lin
+ */
+public class CommitIndex {
+
+    /** Magic number at the front of the index file. */
+    static final int MAGIC = 0x47434932;
+    /** Number of entries of the fan-out table. */
+    static final int FANOUT = 256;
+    /** Length of the header: magic, commits covered, ids held and the
+     *  fan-out table. */
+    static final int HEADER = 12 + 4 * FANOUT;
+
+    /** Constructor of the commit index stored in FILE. */
+    public CommitIndex(File file) {
+        _file = file;
+        map();
+    }
+
+    /** Return the commit index of the repository whose object directory
+     *  is OBJECTDIR, brought up to date with its commit graph. */
+    public static CommitIndex forObjects(File objectDir) {
+        CommitIndex index = new CommitIndex(
+                Utils.join(objectDir.getParentFile(), "commit-index"));
+        index.update(CommitGraph.forObjects(objectDir));
+        return index;
+    }
+
+    /** Merge into the index the commits of GRAPH it does not cover yet,
+     *  rewriting it whole if GRAPH is shorter than what it covers. */
+    public void update(CommitGraph graph) {
+        if (_covered == graph.size()) {
+            return;
+        }
+        int from = _covered > graph.size() ? 0 : _covered;
+        byte[][] added = new byte[graph.size() - from][];
+        Integer[] order = new Integer[added.length];
+        for (int i = from; i < graph.size(); i += 1) {
+            added[i - from] = Pack.toBytes(graph.id(i));
+            order[i - from] = i;
+        }
+        Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(
+                added[a - from], added[b - from]));
+        int oldSize = from == 0 ? 0 : _size;
+        List<byte[]> ids = new ArrayList<>(added.length + oldSize);
+        List<Integer> positions = new ArrayList<>(added.length + oldSize);
+        byte[] old = new byte[Pack.ID_BYTES];
+        int i = 0, j = 0;
+        while (i < oldSize || j < order.length) {
+            byte[] next;
+            int position;
+            if (j < order.length && (i == oldSize || Arrays.compareUnsigned(
+                    idAt(i, old), added[order[j] - from]) > 0)) {
+                position = order[j];
+                next = added[position - from];
+                j += 1;
+            } else {
+                next = idAt(i, new byte[Pack.ID_BYTES]);
+                position = positionAt(i);
+                i += 1;
+            }
+            int last = ids.size() - 1;
+            if (last >= 0 && Arrays.equals(ids.get(last), next)) {
+                positions.set(last, Math.max(positions.get(last), position));
+            } else {
+                ids.add(next);
+                positions.add(position);
+            }
+        }
+        try {
+            write(graph.size(), ids, positions);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        map();
+    }
+
+    /** Return the number of ids in the index. */
+    public int size() {
+        return _size;
+    }
+
+    /** Return the number of commits of the graph the index covers. */
+    public int covered() {
+        return _covered;
+    }
+
+    /** Return the graph position of the commit whose id is ID, or
+     *  CommitGraph.NONE if the index does not hold it. */
+    public int position(byte[] id) {
+        int first = id[0] & 0xff;
+        int lo = first == 0 ? 0 : fanout(first - 1);
+        int hi = fanout(first) - 1;
+        byte[] probe = new byte[Pack.ID_BYTES];
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = Arrays.compareUnsigned(idAt(mid, probe), id);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return positionAt(mid);
+            }
+        }
+        return CommitGraph.NONE;
+    }
+
+    /** Return, in order, the ids starting with PREFIX, at most LIMIT of
+     *  them, or none if PREFIX is not a lower-case hexadecimal prefix of
+     *  an id. */
+    public List<String> matches(String prefix, int limit) {
+        List<String> result = new ArrayList<>();
+        if (!isPrefix(prefix)) {
+            return result;
+        }
+        byte[] low = Pack.toBytes(pad(prefix, '0'));
+        byte[] high = Pack.toBytes(pad(prefix, 'f'));
+        int lo = (low[0] & 0xff) == 0 ? 0 : fanout((low[0] & 0xff) - 1);
+        int hi = fanout(high[0] & 0xff);
+        byte[] id = new byte[Pack.ID_BYTES];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Arrays.compareUnsigned(idAt(mid, id), low) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int i = lo; i < _size && result.size() < limit; i += 1) {
+            if (Arrays.compareUnsigned(idAt(i, id), high) > 0) {
+                break;
+            }
+            result.add(Pack.toHex(id));
+        }
+        return result;
+    }
+
+    /** Return true if PREFIX is a lower-case hexadecimal prefix of an
+     *  id. */
+    static boolean isPrefix(String prefix) {
+        return prefix.matches("[0-9a-f]{1,40}");
+    }
+
+    /** Return PREFIX padded to the length of an id with FILL. */
+    private static String pad(String prefix, char fill) {
+        StringBuilder result = new StringBuilder(prefix);
+        while (result.length() < Utils.UID_LENGTH) {
+            result.append(fill);
+        }
+        return result.toString();
+    }
+
+    /** Return the number of ids whose first byte is at most VALUE. */
+    private int fanout(int value) {
+        return _data.getInt(12 + 4 * value);
+    }
+
+    /** Copy the id at POSITION into ID.
+     *  @return ID */
+    private byte[] idAt(int position, byte[] id) {
+        ByteBuffer record = _data.duplicate();
+        record.position(HEADER + position * Pack.ID_BYTES);
+        record.get(id);
+        return id;
+    }
+
+    /** Return the graph position of the id at INDEX. */
+    private int positionAt(int index) {
+        return _data.getInt(HEADER + _size * Pack.ID_BYTES + 4 * index);
+    }
+
+    /** Write the index of IDS, sorted, and their graph POSITIONS,
+     *  covering the first COVERED commits of the graph, through a
+     *  temporary file renamed into place. */
+    private void write(int covered, List<byte[]> ids,
+                       List<Integer> positions) throws IOException {
+        int[] fanout = new int[FANOUT];
+        for (byte[] id : ids) {
+            fanout[id[0] & 0xff] += 1;
+        }
+        for (int i = 1; i < FANOUT; i += 1) {
+            fanout[i] += fanout[i - 1];
+        }
+        File temp = new File(_file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(covered);
+            out.writeInt(ids.size());
+            for (int count : fanout) {
+                out.writeInt(count);
+            }
+            for (byte[] id : ids) {
+                out.write(id);
+            }
+            for (int position : positions) {
+                out.writeInt(position);
+            }
+        }
+        Files.move(temp.toPath(), _file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Map the index file, or treat the index as empty if it is missing
+     *  or not an index. */
+    private void map() {
+        _data = ByteBuffer.allocate(HEADER);
+        if (_file.length() >= HEADER) {
+            try (FileChannel channel = FileChannel.open(_file.toPath())) {
+                _data = channel.map(FileChannel.MapMode.READ_ONLY,
+                        0, channel.size());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        if (_data.getInt(0) != MAGIC) {
+            _data = ByteBuffer.allocate(HEADER);
+        }
+        _covered = _data.getInt(4);
+        _size = _data.getInt(8);
+    }
+
+    /** The index file. */
+    private final File _file;
+    /** Content of the index file. */
+    private ByteBuffer _data;
+    /** Number of commits of the graph the index covers. */
+    private int _covered;
+    /** Number of ids in the index. */
+    private int _size;
+}
@@ -0,0 +1,159 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/** Tests of the commit index.
+ *  @author Huixuan Lin
+ */
+public class CommitIndexTest {
+
+    /** Return the ids of a chain of N commits saved in the object
+     *  directory OBJECTS, whose messages start with NAME, oldest
+     *  first. */
+    static List<String> chain(File objects, String name, int n)
+            throws IOException {
+        List<String> ids = new ArrayList<>();
+        Commit parent = null;
+        for (int i = 0; i < n; i += 1) {
+            Commit commit = new Commit(null, name + i);
+            commit.setParent(parent);
+            commit.saveCommit(objects);
+            ids.add(commit.getCommitSha1());
+            parent = commit;
+        }
+        return ids;
+    }
+
+    /** Return, in order, the ids of IDS starting with PREFIX. */
+    private static List<String> startingWith(List<String> ids,
+                                             String prefix) {
+        List<String> result = new ArrayList<>();
+        for (String id : ids) {
+            if (id.startsWith(prefix)) {
+                result.add(id);
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    @Test
+    public void prefixesMatchInOrder() throws IOException {
+        File repo = UnitTest.scratch();
+        try {
+            File objects = Utils.join(repo, "object");
+            objects.mkdir();
+            List<String> all = chain(objects, "commit ", 40);
+            CommitIndex index = CommitIndex.forObjects(objects);
+            assertEquals(40, index.size());
+            all.addAll(chain(objects, "more ", 10));
+            index = CommitIndex.forObjects(objects);
+            assertEquals(50, index.size());
+            for (String id : all) {
+                assertEquals(List.of(id), index.matches(id, 2));
+                assertTrue(index.matches(id.substring(0, 7), 10)
+                        .contains(id));
+            }
+            boolean ambiguous = false;
+            for (char c : "0123456789abcdef".toCharArray()) {
+                String prefix = Character.toString(c);
+                List<String> expected = startingWith(all, prefix);
+                assertEquals(expected, index.matches(prefix, 100));
+                List<String> limited = index.matches(prefix, 2);
+                assertEquals(expected.subList(0,
+                        Math.min(2, expected.size())), limited);
+                ambiguous |= limited.size() > 1;
+            }
+            assertTrue("no prefix shared by two ids", ambiguous);
+        } finally {
+            UnitTest.delete(repo);
+        }
+    }
+
+    @Test
+    public void badPrefixesMatchNothing() throws IOException {
+        File repo = UnitTest.scratch();
+        try {
+            File objects = Utils.join(repo, "object");
+            objects.mkdir();
+            String id = chain(objects, "commit ", 1).get(0);
+            CommitIndex index = CommitIndex.forObjects(objects);
+            assertTrue(index.matches("", 10).isEmpty());
+            assertTrue(index.matches(id.toUpperCase(), 10).isEmpty());
+            assertTrue(index.matches("xyz", 10).isEmpty());
+            assertTrue(index.matches(id + "0", 10).isEmpty());
+            assertTrue(index.matches(Utils.sha1("other"), 10).isEmpty());
+        } finally {
+            UnitTest.delete(repo);
+        }
+    }
+
+    @Test
+    public void positionsThroughIndexAndTail() throws IOException {
+        File repo = UnitTest.scratch();
+        try {
+            File objects = Utils.join(repo, "object");
+            objects.mkdir();
+            int n = 3 * CommitGraph.INDEX_SLACK;
+            List<String> ids = chain(objects, "commit ", n);
+            CommitGraph graph = CommitGraph.forObjects(objects);
+            for (int i = 0; i < n; i += 1) {
+                assertEquals(i, graph.position(ids.get(i)));
+            }
+            CommitIndex index = new CommitIndex(
+                    Utils.join(repo, "commit-index"));
+            assertTrue(n - index.covered() <= CommitGraph.INDEX_SLACK);
+            index.update(graph);
+            assertEquals(n, index.covered());
+            assertEquals(n, index.size());
+
+            List<String> more = chain(objects, "more ", 2);
+            graph = CommitGraph.forObjects(objects);
+            assertEquals(0, graph.position(ids.get(0)));
+            assertEquals(n + 1, graph.position(more.get(1)));
+            assertEquals(CommitGraph.NONE,
+                    graph.position(Utils.sha1("not a commit")));
+            assertEquals(CommitGraph.NONE, graph.position("abc"));
+        } finally {
+            UnitTest.delete(repo);
+        }
+    }
+
+    @Test
+    public void prefixesFoundInUncoveredTail() throws IOException {
+        File repo = UnitTest.scratch();
+        try {
+            File objects = Utils.join(repo, "object");
+            objects.mkdir();
+            List<String> ids = chain(objects, "commit ", 40);
+            CommitIndex.forObjects(objects);
+            ids.addAll(chain(objects, "more ", 10));
+
+            CommitGraph graph = CommitGraph.forObjects(objects);
+            for (String id : ids) {
+                assertEquals(List.of(id), graph.matches(id, 2));
+                String prefix = id.substring(0, 2);
+                assertEquals(startingWith(ids, prefix),
+                        graph.matches(prefix, 100));
+            }
+            for (char digit : "0123456789abcdef".toCharArray()) {
+                List<String> expected = startingWith(ids, "" + digit);
+                assertEquals(expected.subList(0, Math.min(2,
+                        expected.size())), graph.matches("" + digit, 2));
+            }
+            assertTrue(graph.matches("", 10).isEmpty());
+            assertEquals(40, new CommitIndex(
+                    Utils.join(repo, "commit-index")).covered());
+        } finally {
+            UnitTest.delete(repo);
+        }
+    }
+}
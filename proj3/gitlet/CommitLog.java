@@ -0,0 +1,333 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+
+/** The compact log of one commit history: beside the index listing
+ *  the ids of its commits, a file of one record per commit holding what
+ *  global-log prints, a file of the offsets of those records, and an
+ *  inverted index of the terms of their messages, each posting a term
+ *  and the ordinal of a commit using it. All three are appended to as
+ *  commits are added, so neither global-log nor find reads a commit.
+ *  Terms are the runs of letters and digits of a message, lower-cased.
+ *  @author Huixuan Lin
+ */
+public class CommitLog {
+
+    /** Flag of a record of a merge commit, followed by its parents. */
+    static final byte MERGED = 1;
+
+    /** Constructor of the log of the history whose index is INDEX. */
+    public CommitLog(File index) {
+        _records = new File(index.getPath() + ".log");
+        _offsets = new File(index.getPath() + ".logidx");
+        _terms = new File(index.getPath() + ".terms");
+    }
+
+    /** Return the number of commits in the log. */
+    public int size() {
+        return (int) (_offsets.length() / 8);
+    }
+
+    /** Append COMMIT to the log, with the terms of its message. */
+    public void append(Commit commit) throws IOException {
+        int ordinal = size();
+        long offset = _records.length();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                        new FileOutputStream(_records, true)))) {
+            out.write(Pack.toBytes(commit.getCommitSha1()));
+            out.writeByte(commit.isMerged() ? MERGED : 0);
+            if (commit.isMerged()) {
+                out.write(Pack.toBytes(commit.getParentId()));
+                out.write(Pack.toBytes(commit.getSecondParentId()));
+            }
+            writeString(out, commit.getTimeStamps());
+            writeString(out, commit.getMessage());
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                        new FileOutputStream(_terms, true)))) {
+            for (String term : terms(commit.getMessage())) {
+                writeString(out, term);
+                out.writeInt(ordinal);
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(_offsets, true))) {
+            out.writeLong(offset);
+        }
+    }
+
+    /** Bring the log up to IDS, the ids of the commits of its history,
+     *  in order, reading the commits it lacks from object directory
+     *  OBJECTS. A log longer than IDS is started again. */
+    public void sync(List<String> ids, File objects) throws IOException {
+        if (size() > ids.size()) {
+            delete();
+        }
+        for (int i = size(); i < ids.size(); i += 1) {
+            append(Commit.fromFile(objects, ids.get(i)));
+        }
+    }
+
+    /** Delete the files of the log. */
+    public void delete() {
+        _records.delete();
+        _offsets.delete();
+        _terms.delete();
+    }
+
+    /** Return a reader of the records of the log from ordinal FROM on,
+     *  read one at a time. */
+    public Reader read(int from) throws IOException {
+        return new Reader(Math.min(Math.max(from, 0), size()));
+    }
+
+    /** Return the ids of the commits whose messages equal QUERY if
+     *  EXACT, or contain it otherwise, in the order of the log. Each run
+     *  of letters and digits of QUERY must match a term of a message:
+     *  equal it if QUERY goes on past it on both sides or EXACT, start
+     *  with it if only before it, end with it if only after it, and
+     *  contain it otherwise. Only commits with terms meeting every run
+     *  are read back and checked whole. */
+    public List<String> find(String query, boolean exact)
+            throws IOException {
+        List<Run> runs = runs(query, exact);
+        List<String> result = new ArrayList<>();
+        if (size() == 0) {
+            return result;
+        }
+        BitSet candidates = new BitSet();
+        candidates.set(0, size());
+        if (!runs.isEmpty()) {
+            BitSet[] matches = new BitSet[runs.size()];
+            for (int i = 0; i < matches.length; i += 1) {
+                matches[i] = new BitSet();
+            }
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(_terms)))) {
+                while (true) {
+                    String term;
+                    try {
+                        term = readString(in);
+                    } catch (EOFException excp) {
+                        break;
+                    }
+                    int ordinal = in.readInt();
+                    for (int i = 0; i < matches.length; i += 1) {
+                        if (runs.get(i).matches(term)) {
+                            matches[i].set(ordinal);
+                        }
+                    }
+                }
+            }
+            for (BitSet match : matches) {
+                candidates.and(match);
+            }
+        }
+        try (RandomAccessFile offsets = new RandomAccessFile(_offsets, "r");
+             RandomAccessFile records = new RandomAccessFile(_records, "r")) {
+            for (int i = candidates.nextSetBit(0); i >= 0;
+                 i = candidates.nextSetBit(i + 1)) {
+                offsets.seek(8L * i);
+                records.seek(offsets.readLong());
+                Record record = new Record(records);
+                if (exact ? record.message.equals(query)
+                        : record.message.contains(query)) {
+                    result.add(record.id);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the distinct terms of MESSAGE. */
+    static TreeSet<String> terms(String message) {
+        TreeSet<String> terms = new TreeSet<>();
+        for (Run run : runs(message, true)) {
+            terms.add(run.text);
+        }
+        return terms;
+    }
+
+    /** Return the runs of letters and digits of QUERY, lower-cased, each
+     *  marked bounded on a side if QUERY goes on past it there or EXACT,
+     *  when the run is matched whole by the terms of a message. */
+    private static List<Run> runs(String query, boolean exact) {
+        List<Run> runs = new ArrayList<>();
+        int i = 0;
+        while (i < query.length()) {
+            if (!Character.isLetterOrDigit(query.charAt(i))) {
+                i += 1;
+                continue;
+            }
+            int start = i;
+            while (i < query.length()
+                    && Character.isLetterOrDigit(query.charAt(i))) {
+                i += 1;
+            }
+            runs.add(new Run(query.substring(start, i).toLowerCase(
+                    Locale.ROOT), exact || start > 0,
+                    exact || i < query.length()));
+        }
+        return runs;
+    }
+
+    /** Write STR to OUT as its length followed by its UTF-8 bytes. */
+    private static void writeString(DataOutputStream out, String str)
+            throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Return a string written by writeString from IN. */
+    private static String readString(DataInput in)
+            throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** A run of letters and digits of a query, and how a term of a
+     *  message must match it. */
+    private static class Run {
+        /** Constructor of the run TEXT, which a term must start with if
+         *  STARTS and end with if ENDS. */
+        Run(String text, boolean starts, boolean ends) {
+            this.text = text;
+            this.starts = starts;
+            this.ends = ends;
+        }
+
+        /** Return true if TERM may hold this run where it is in the
+         *  query. */
+        boolean matches(String term) {
+            if (starts && ends) {
+                return term.equals(text);
+            } else if (starts) {
+                return term.startsWith(text);
+            } else if (ends) {
+                return term.endsWith(text);
+            }
+            return term.contains(text);
+        }
+
+        /** The text of the run. */
+        final String text;
+        /** True if the run starts a term. */
+        final boolean starts;
+        /** True if the run ends a term. */
+        final boolean ends;
+    }
+
+    /** What global-log prints of one commit. */
+    public static class Record {
+        /** Constructor of the record read from IN. */
+        Record(DataInput in) throws IOException {
+            byte[] bytes = new byte[Pack.ID_BYTES];
+            in.readFully(bytes);
+            id = Pack.toHex(bytes);
+            merged = (in.readByte() & MERGED) != 0;
+            if (merged) {
+                in.readFully(bytes);
+                parentId = Pack.toHex(bytes);
+                in.readFully(bytes);
+                secondParentId = Pack.toHex(bytes);
+            } else {
+                parentId = "";
+                secondParentId = "";
+            }
+            timeStamps = readString(in);
+            message = readString(in);
+        }
+
+        /** Id of the commit. */
+        public final String id;
+        /** True if the commit is a merge. */
+        public final boolean merged;
+        /** Id of the first parent of a merge, or "". */
+        public final String parentId;
+        /** Id of the second parent of a merge, or "". */
+        public final String secondParentId;
+        /** Time stamps of the commit. */
+        public final String timeStamps;
+        /** Message of the commit. */
+        public final String message;
+    }
+
+    /** Reader of the records of the log, one at a time. */
+    public class Reader implements Iterator<Record>, Closeable {
+        /** Constructor of the reader from ordinal FROM on. */
+        Reader(int from) throws IOException {
+            _left = size() - from;
+            if (_left == 0) {
+                _in = null;
+                return;
+            }
+            FileInputStream file = new FileInputStream(_records);
+            try (RandomAccessFile offsets =
+                         new RandomAccessFile(_offsets, "r")) {
+                offsets.seek(8L * from);
+                file.getChannel().position(offsets.readLong());
+            }
+            _in = new DataInputStream(new BufferedInputStream(file));
+        }
+
+        @Override
+        public boolean hasNext() {
+            return _left > 0;
+        }
+
+        @Override
+        public Record next() {
+            if (_left == 0) {
+                throw new NoSuchElementException();
+            }
+            try {
+                _left -= 1;
+                return new Record(_in);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (_in != null) {
+                _in.close();
+            }
+        }
+
+        /** Stream of the records, or null if there are none. */
+        private final DataInputStream _in;
+        /** Number of records not yet read. */
+        private int _left;
+    }
+
+    /** File of the records of commits. */
+    private final File _records;
+    /** File of the offsets of the records, eight bytes each. */
+    private final File _offsets;
+    /** File of the postings of the terms of messages. */
+    private final File _terms;
+}
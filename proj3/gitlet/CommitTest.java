@@ -0,0 +1,107 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/** Tests of commit ids and records.
+ *  @author Huixuan Lin
+ */
+public class CommitTest {
+
+    /** Return a saved commit in DIR with MESSAGE on PARENT. */
+    private static Commit commit(File dir, String message, Commit parent)
+            throws IOException {
+        Commit commit = new Commit(null, message);
+        commit.setParent(parent);
+        commit.saveCommit(dir);
+        return commit;
+    }
+
+    @Test
+    public void repeatedTreeAndMessageGetNewId() throws IOException {
+        File repo = UnitTest.scratch();
+        try {
+            File objects = Utils.join(repo, "object");
+            objects.mkdir();
+            Commit initial = commit(objects, "initial commit", null);
+            Commit x = commit(objects, "x", initial);
+            Commit y = commit(objects, "y", x);
+            Commit again = commit(objects, "x", y);
+            assertNotEquals(x.getCommitSha1(), again.getCommitSha1());
+            assertEquals(x.getCommitSha1(), Commit.fromFile(objects,
+                    x.getCommitSha1()).getCommitSha1());
+            assertEquals(initial.getCommitSha1(),
+                    Commit.fromFile(objects, x.getCommitSha1())
+                            .getParentId());
+
+            Set<String> seen = new HashSet<>();
+            Commit walk = Commit.fromFile(objects, again.getCommitSha1());
+            while (walk != null) {
+                assertTrue("parent cycle", seen.add(walk.getCommitSha1()));
+                walk = walk.getParent();
+            }
+            assertEquals(4, seen.size());
+
+            CommitGraph graph = CommitGraph.forObjects(objects);
+            assertEquals(4, graph.size());
+            assertTrue(graph.isAncestor(x.getCommitSha1(),
+                    again.getCommitSha1()));
+            assertFalse(graph.isAncestor(again.getCommitSha1(),
+                    x.getCommitSha1()));
+        } finally {
+            UnitTest.delete(repo);
+        }
+    }
+
+    @Test
+    public void reachabilityRebuiltFromGraph() throws IOException {
+        File repo = UnitTest.scratch();
+        try {
+            File objects = Utils.join(repo, "object");
+            objects.mkdir();
+            List<String> ids = CommitIndexTest.chain(objects, "c", 10);
+            Utils.join(repo, "reachability").delete();
+            Utils.join(repo, "reachability.idx").delete();
+            CommitGraph graph = CommitGraph.forObjects(objects);
+            assertTrue(graph.isAncestor(ids.get(0), ids.get(9)));
+            assertFalse(graph.isAncestor(ids.get(9), ids.get(0)));
+            assertEquals(10, Reachability.forObjects(objects).size());
+
+            Reachability reachability = Reachability.forObjects(objects);
+            try {
+                reachability.add(12, 11, CommitGraph.NONE);
+                fail("recorded a commit past a missing one");
+            } catch (IllegalArgumentException excp) {
+                assertEquals(10, reachability.size());
+            }
+            List<String> more = CommitIndexTest.chain(objects, "d", 2);
+            assertEquals(12, Reachability.forObjects(objects).size());
+            assertTrue(CommitGraph.forObjects(objects)
+                    .isAncestor(more.get(0), more.get(1)));
+        } finally {
+            UnitTest.delete(repo);
+        }
+    }
+
+    @Test
+    public void idCoversParentsAndRecordRoundTrips() {
+        Commit parent = new Commit(null, "p");
+        Commit commit = new Commit(null, "m");
+        String alone = commit.getCommitSha1();
+        commit.setParent(parent);
+        assertNotEquals(alone, commit.getCommitSha1());
+        assertEquals(commit.hash(), commit.getCommitSha1());
+        Commit read = Commit.fromBytes(commit.toBytes(), null);
+        assertEquals(commit.getCommitSha1(), read.getCommitSha1());
+        assertEquals(commit.hash(), read.hash());
+        assertEquals(parent.getCommitSha1(), read.getParentId());
+        assertEquals("m", read.getMessage());
+    }
+}
@@ -0,0 +1,176 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/** Long-running server for the repository in the current directory.
+ *  It keeps the current branch, stage, history, stat cache and object
+ *  cache loaded between commands, which Client sends it over a Unix
+ *  domain socket in .gitlet. Commands run one at a time. Before each,
+ *  the state is read again if anything in .gitlet changed since the
+ *  daemon last saved it, or if the previous command failed.
+ *  Usage: java gitlet.Daemon, and java gitlet.Client --stop to end it.
+ *  @author Huixuan Lin
+ */
+public class Daemon {
+
+    /** Name of the socket file in the repository. */
+    static final String SOCKET = "daemon.sock";
+    /** Argument asking the daemon to stop. */
+    static final String STOP = "--stop";
+
+    /** Return the socket file of the repository in CWD. */
+    static File socketFile() {
+        return Utils.join(Main.REPO, SOCKET);
+    }
+
+    /** Serve the repository in the current directory until stopped.
+     *  ARGS are ignored. */
+    public static void main(String... args) throws IOException {
+        if (!Main.REPO.exists()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        SocketChannel running = Client.connect();
+        if (running != null) {
+            running.close();
+            System.out.println("A daemon is already running.");
+        } else {
+            new Daemon().serve();
+        }
+    }
+
+    /** Accept and run commands until one asks to stop. */
+    public void serve() throws IOException {
+        Path socket = socketFile().toPath();
+        Files.deleteIfExists(socket);
+        Main._resident = true;
+        try (ServerSocketChannel server =
+                     ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            boolean stop = false;
+            while (!stop) {
+                try (SocketChannel client = server.accept()) {
+                    String[] args = readRequest(client);
+                    stop = args.length == 1 && args[0].equals(STOP);
+                    byte[] output = stop
+                            ? "Daemon stopped.\n".getBytes(
+                                    StandardCharsets.UTF_8)
+                            : run(args);
+                    OutputStream out = Channels.newOutputStream(client);
+                    out.write(output);
+                    out.flush();
+                } catch (IOException excp) {
+                    continue;
+                }
+            }
+        } finally {
+            Files.deleteIfExists(socket);
+            Main._resident = false;
+        }
+    }
+
+    /** Run the command ARGS on the resident state.
+     *  @return what the command printed */
+    byte[] run(String[] args) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(output, true, StandardCharsets.UTF_8));
+        try {
+            if (args.length == 0) {
+                Main.exitWithError("Please enter a command.");
+            }
+            Main.validateArgsFormat(args[0], args);
+            if (args[0].equals("init")) {
+                Main.init(args);
+            } else {
+                if (!Main.REPO.exists()) {
+                    Main.exitWithError("Not in an initialized "
+                            + "Gitlet directory.");
+                }
+                if (_stamp == null || !_stamp.equals(stamp())) {
+                    ObjectDatabase.cache().clear();
+                    Main.load();
+                }
+                Main.switchMethod(args);
+            }
+            Main.save();
+            _stamp = stamp();
+        } catch (GitletException excp) {
+            _stamp = null;
+        } catch (IOException | RuntimeException excp) {
+            System.out.println(excp);
+            _stamp = null;
+        } finally {
+            System.out.flush();
+            System.setOut(stdout);
+        }
+        return output.toByteArray();
+    }
+
+    /** Return the arguments of the request sent on CLIENT: their number
+     *  followed by each in modified UTF-8. */
+    private static String[] readRequest(SocketChannel client)
+            throws IOException {
+        DataInputStream in =
+                new DataInputStream(Channels.newInputStream(client));
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = in.readUTF();
+        }
+        return args;
+    }
+
+    /** Return a summary of the modification times and lengths of the
+     *  files of the repository, or null if it cannot be read. Objects
+     *  are only summarised by their directories, since existing objects
+     *  never change. */
+    private static String stamp() {
+        StringBuilder stamp = new StringBuilder();
+        try {
+            stamp(Main.REPO, stamp);
+        } catch (IOException excp) {
+            return null;
+        }
+        return stamp.toString();
+    }
+
+    /** Append to STAMP the summary of FILE and, unless it is an object
+     *  directory, of the files under it. */
+    private static void stamp(File file, StringBuilder stamp)
+            throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(
+                file.toPath(), BasicFileAttributes.class);
+        stamp.append(file).append(' ').append(attributes.lastModifiedTime().
+                to(TimeUnit.NANOSECONDS)).append(' ').
+                append(attributes.size()).append('\n');
+        if (attributes.isDirectory() && !file.equals(Main.OBJECT)
+                && !file.equals(Main.PACK) && !file.equals(Main.CHUNKS)
+                && !file.equals(Main.MANIFEST)) {
+            String[] names = file.list();
+            Arrays.sort(names);
+            for (String name : names) {
+                stamp(Utils.join(file, name), stamp);
+            }
+        }
+    }
+
+    /** Summary of the repository when the daemon last saved it, or null
+     *  if the state must be read again. */
+    private String _stamp;
+}
@@ -0,0 +1,116 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/** Tests of the resident daemon and its client. The daemon serves the
+ *  repository in its working directory, so it is run as a separate
+ *  process in a scratch directory.
+ *  @author Huixuan Lin
+ */
+public class DaemonTest {
+
+    /** Longest time, in milliseconds, to wait for the daemon to start. */
+    private static final long START_TIMEOUT = 10000;
+
+    /** Return a process running the main method of class MAIN with
+     *  ARGS in directory DIR, with the classes of this test. */
+    private static ProcessBuilder java(File dir, String main,
+                                       String... args) {
+        String[] command = new String[args.length + 4];
+        command[0] = Utils.join(new File(System.getProperty("java.home")),
+                "bin", "java").getPath();
+        command[1] = "-cp";
+        command[2] = System.getProperty("java.class.path");
+        command[3] = main;
+        System.arraycopy(args, 0, command, 4, args.length);
+        return new ProcessBuilder(command).directory(dir)
+                .redirectErrorStream(true);
+    }
+
+    /** Run the main method of class MAIN with ARGS in directory DIR.
+     *  @return what it printed */
+    private static String run(File dir, String main, String... args)
+            throws IOException, InterruptedException {
+        Process process = java(dir, main, args).start();
+        String output = new String(process.getInputStream().readAllBytes(),
+                StandardCharsets.UTF_8);
+        process.waitFor();
+        return output;
+    }
+
+    @Test
+    public void commandsShareOneResidentProcess()
+            throws IOException, InterruptedException {
+        File dir = UnitTest.scratch();
+        Process daemon = null;
+        try {
+            run(dir, "gitlet.Main", "init");
+            daemon = java(dir, "gitlet.Daemon").start();
+            File socket = Utils.join(dir, ".gitlet", Daemon.SOCKET);
+            long deadline = System.currentTimeMillis() + START_TIMEOUT;
+            while (!socket.exists() && daemon.isAlive()
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertTrue(socket.exists());
+
+            Utils.writeContents(Utils.join(dir, "f.txt"), "one\n");
+            assertEquals("", run(dir, "gitlet.Client", "add", "f.txt"));
+            assertEquals("", run(dir, "gitlet.Client", "commit", "one"));
+
+            Utils.writeContents(Utils.join(dir, "g.txt"), "two\n");
+            run(dir, "gitlet.Main", "add", "g.txt");
+            run(dir, "gitlet.Main", "commit", "two");
+            run(dir, "gitlet.Main", "branch", "other");
+
+            String log = run(dir, "gitlet.Client", "log");
+            assertTrue(log, log.contains("\ntwo\n"));
+            assertTrue(log, log.indexOf("\ntwo\n") < log.indexOf("\none\n"));
+            String status = run(dir, "gitlet.Client", "status");
+            assertTrue(status, status.startsWith(
+                    "=== Branches ===\n*master\nother\n"));
+            assertEquals("No such branch exists.\n",
+                    run(dir, "gitlet.Client", "checkout", "missing"));
+            assertEquals(status, run(dir, "gitlet.Client", "status"));
+            assertTrue(daemon.isAlive());
+
+            assertEquals("Daemon stopped.\n",
+                    run(dir, "gitlet.Client", Daemon.STOP));
+            daemon.waitFor();
+            assertFalse(socket.exists());
+        } finally {
+            if (daemon != null) {
+                daemon.destroy();
+            }
+            UnitTest.delete(dir);
+        }
+    }
+
+    @Test
+    public void errorsThrowWhenResident() {
+        boolean resident = Main._resident;
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Main._resident = true;
+        System.setOut(new PrintStream(output, true, StandardCharsets.UTF_8));
+        try {
+            Main.exitWithError("No such branch exists.");
+            fail("exitWithError returned");
+        } catch (GitletException excp) {
+            assertEquals("No such branch exists.", excp.getMessage());
+        } finally {
+            System.setOut(stdout);
+            Main._resident = resident;
+        }
+        assertEquals("No such branch exists.\n",
+                output.toString(StandardCharsets.UTF_8));
+    }
+}
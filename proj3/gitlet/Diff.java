@@ -0,0 +1,400 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/** Line diff of two byte contents by Myers' algorithm in linear space.
+ *  Lines are hashed and numbered so that equal lines compare as equal
+ *  ints, and lines common to the start and end of a range are trimmed
+ *  before its middle snake is searched for. Takes O((N+M)D) time and
+ *  O(N+M) space for contents of N and M lines differing in D lines.
+ *  @author Huixuan Lin
+ */
+public class Diff {
+
+    /** Number of unchanged lines shown around each change. */
+    static final int CONTEXT = 3;
+    /** Number of leading bytes looked at for a NUL to tell binary
+     *  content. */
+    static final int BINARY_PROBE = 8000;
+
+    /** Constructor of the diff from content A to content B. */
+    public Diff(byte[] a, byte[] b) {
+        this(new Lines(a), new Lines(b));
+    }
+
+    /** Constructor of the diff from lines A to lines B. */
+    public Diff(Lines a, Lines b) {
+        _a = a;
+        _b = b;
+        HashMap<Line, Integer> numbers = new HashMap<>();
+        _aIds = a.number(numbers);
+        _bIds = b.number(numbers);
+        _edits = new ArrayList<>();
+        diff(0, _aIds.length, 0, _bIds.length);
+    }
+
+    /** Return true if DATA looks binary: it has a NUL among its first
+     *  BINARY_PROBE bytes. */
+    static boolean isBinary(byte[] data) {
+        for (int i = 0; i < Math.min(data.length, BINARY_PROBE); i += 1) {
+            if (data[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the edits turning A into B, in order. */
+    public List<Edit> edits() {
+        return _edits;
+    }
+
+    /** Return the lines diffed from. */
+    public Lines a() {
+        return _a;
+    }
+
+    /** Return the lines diffed to. */
+    public Lines b() {
+        return _b;
+    }
+
+    /** Print to OUT this diff in unified format, between files named
+     *  ANAME and BNAME, or /dev/null for a name that is null. */
+    public void format(PrintStream out, String aName, String bName) {
+        if (_edits.isEmpty()) {
+            return;
+        }
+        out.println("--- " + (aName == null ? "/dev/null" : "a/" + aName));
+        out.println("+++ " + (bName == null ? "/dev/null" : "b/" + bName));
+        if (_a.isBinary() || _b.isBinary()) {
+            out.println("Binary files differ");
+            return;
+        }
+        for (int first = 0; first < _edits.size();) {
+            int last = first;
+            while (last + 1 < _edits.size()
+                    && _edits.get(last + 1).aStart - _edits.get(last).aEnd
+                    <= 2 * CONTEXT) {
+                last += 1;
+            }
+            formatHunk(out, first, last);
+            first = last + 1;
+        }
+    }
+
+    /** Print to OUT the hunk of edits FIRST to LAST with their context. */
+    private void formatHunk(PrintStream out, int first, int last) {
+        Edit start = _edits.get(first), end = _edits.get(last);
+        int aStart = Math.max(0, start.aStart - CONTEXT);
+        int bStart = start.bStart - (start.aStart - aStart);
+        int aEnd = Math.min(_a.size(), end.aEnd + CONTEXT);
+        int bEnd = end.bEnd + (aEnd - end.aEnd);
+        out.println("@@ -" + range(aStart, aEnd) + " +"
+                + range(bStart, bEnd) + " @@");
+        int a = aStart;
+        for (int i = first; i <= last; i += 1) {
+            Edit edit = _edits.get(i);
+            for (; a < edit.aStart; a += 1) {
+                printLine(out, ' ', _a, a);
+            }
+            for (int j = edit.aStart; j < edit.aEnd; j += 1) {
+                printLine(out, '-', _a, j);
+            }
+            for (int j = edit.bStart; j < edit.bEnd; j += 1) {
+                printLine(out, '+', _b, j);
+            }
+            a = edit.aEnd;
+        }
+        for (; a < aEnd; a += 1) {
+            printLine(out, ' ', _a, a);
+        }
+    }
+
+    /** Return the hunk header range of lines START to END. */
+    private static String range(int start, int end) {
+        int count = end - start;
+        int first = count == 0 ? start : start + 1;
+        return count == 1 ? Integer.toString(first) : first + "," + count;
+    }
+
+    /** Print to OUT line INDEX of LINES after MARK. */
+    private static void printLine(PrintStream out, char mark,
+                                  Lines lines, int index) {
+        out.print(mark);
+        out.write(lines.data(), lines.start(index), lines.length(index));
+        if (!lines.endsWithNewline(index)) {
+            out.println();
+            out.println("\\ No newline at end of file");
+        }
+    }
+
+    /** Append the edits turning lines ALO to AHI of A into lines BLO to
+     *  BHI of B. */
+    private void diff(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && _aIds[aLo] == _bIds[bLo]) {
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi
+                && _aIds[aHi - 1] == _bIds[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            if (aLo < aHi || bLo < bHi) {
+                addEdit(aLo, aHi, bLo, bHi);
+            }
+            return;
+        }
+        int[] snake = middleSnake(aLo, aHi, bLo, bHi);
+        if (snake == null) {
+            addEdit(aLo, aHi, bLo, bHi);
+        } else {
+            diff(aLo, snake[0], bLo, snake[1]);
+            diff(snake[0], aHi, snake[1], bHi);
+        }
+    }
+
+    /** Return the point {x, y} where an optimal path from (ALO, BLO) to
+     *  (AHI, BHI) crosses the middle diagonal band, searching forwards
+     *  and backwards at once, or null if the ranges share no line. */
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo, m = bHi - bLo;
+        int max = (n + m + 1) / 2;
+        int offset = max + 1, length = 2 * max + 3;
+        int[] forward = new int[length], backward = new int[length];
+        Arrays.fill(forward, -1);
+        Arrays.fill(backward, -1);
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int kStart1 = 0, kEnd1 = 0, kStart2 = 0, kEnd2 = 0;
+        for (int d = 0; d <= max; d += 1) {
+            for (int k = -d + kStart1; k <= d - kEnd1; k += 2) {
+                int i = offset + k;
+                int x = k == -d || k != d && forward[i - 1] < forward[i + 1]
+                        ? forward[i + 1] : forward[i - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m
+                        && _aIds[aLo + x] == _bIds[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                forward[i] = x;
+                if (x > n) {
+                    kEnd1 += 2;
+                } else if (y > m) {
+                    kStart1 += 2;
+                } else if (odd) {
+                    int j = offset + delta - k;
+                    if (j >= 0 && j < length && backward[j] != -1
+                            && x >= n - backward[j]) {
+                        return new int[] {aLo + x, bLo + y};
+                    }
+                }
+            }
+            for (int k = -d + kStart2; k <= d - kEnd2; k += 2) {
+                int i = offset + k;
+                int x = k == -d
+                        || k != d && backward[i - 1] < backward[i + 1]
+                        ? backward[i + 1] : backward[i - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && _aIds[aHi - x - 1]
+                        == _bIds[bHi - y - 1]) {
+                    x += 1;
+                    y += 1;
+                }
+                backward[i] = x;
+                if (x > n) {
+                    kEnd2 += 2;
+                } else if (y > m) {
+                    kStart2 += 2;
+                } else if (!odd) {
+                    int j = offset + delta - k;
+                    if (j >= 0 && j < length && forward[j] != -1) {
+                        int x1 = forward[j];
+                        int y1 = x1 - (j - offset);
+                        if (x1 >= n - x) {
+                            return new int[] {aLo + x1, bLo + y1};
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Append the edit replacing lines ALO to AHI of A by lines BLO to
+     *  BHI of B, joining it to the last edit if they touch. */
+    private void addEdit(int aLo, int aHi, int bLo, int bHi) {
+        if (!_edits.isEmpty()) {
+            Edit last = _edits.get(_edits.size() - 1);
+            if (last.aEnd == aLo && last.bEnd == bLo) {
+                _edits.set(_edits.size() - 1,
+                        new Edit(last.aStart, aHi, last.bStart, bHi));
+                return;
+            }
+        }
+        _edits.add(new Edit(aLo, aHi, bLo, bHi));
+    }
+
+    /** A change replacing lines aStart to aEnd (exclusive) of the old
+     *  content by lines bStart to bEnd of the new. */
+    public static class Edit {
+        /** Constructor of the edit replacing lines ASTART to AEND by
+         *  lines BSTART to BEND. */
+        Edit(int aStart, int aEnd, int bStart, int bEnd) {
+            this.aStart = aStart;
+            this.aEnd = aEnd;
+            this.bStart = bStart;
+            this.bEnd = bEnd;
+        }
+
+        /** First old line replaced. */
+        final int aStart;
+        /** Line after the last old line replaced. */
+        final int aEnd;
+        /** First new line. */
+        final int bStart;
+        /** Line after the last new line. */
+        final int bEnd;
+    }
+
+    /** The lines of a content, as offsets into its bytes. Each line
+     *  keeps its newline, if it has one. */
+    public static class Lines {
+        /** Constructor of the lines of DATA. */
+        public Lines(byte[] data) {
+            _data = data;
+            int count = 0;
+            for (byte b : data) {
+                if (b == '\n') {
+                    count += 1;
+                }
+            }
+            if (data.length > 0 && data[data.length - 1] != '\n') {
+                count += 1;
+            }
+            _starts = new int[count + 1];
+            int line = 1;
+            for (int i = 0; i < data.length; i += 1) {
+                if (data[i] == '\n' && line < count) {
+                    _starts[line] = i + 1;
+                    line += 1;
+                }
+            }
+            _starts[count] = data.length;
+        }
+
+        /** Return the number of lines. */
+        public int size() {
+            return _starts.length - 1;
+        }
+
+        /** Return the bytes the lines are in. */
+        public byte[] data() {
+            return _data;
+        }
+
+        /** Return the offset of line INDEX. */
+        public int start(int index) {
+            return _starts[index];
+        }
+
+        /** Return the length of line INDEX with its newline. */
+        public int length(int index) {
+            return _starts[index + 1] - _starts[index];
+        }
+
+        /** Return line INDEX as a string. */
+        public String get(int index) {
+            return new String(_data, start(index), length(index),
+                    StandardCharsets.UTF_8);
+        }
+
+        /** Return true if line INDEX ends with a newline. */
+        public boolean endsWithNewline(int index) {
+            return _data[_starts[index + 1] - 1] == '\n';
+        }
+
+        /** Return true if the content looks binary. */
+        public boolean isBinary() {
+            return Diff.isBinary(_data);
+        }
+
+        /** Return the number of each line, numbering lines not yet in
+         *  NUMBERS next and adding them. */
+        int[] number(HashMap<Line, Integer> numbers) {
+            int[] ids = new int[size()];
+            for (int i = 0; i < ids.length; i += 1) {
+                Line line = new Line(_data, start(i), _starts[i + 1]);
+                Integer id = numbers.putIfAbsent(line, numbers.size());
+                ids[i] = id == null ? numbers.size() - 1 : id;
+            }
+            return ids;
+        }
+
+        /** The content. */
+        private final byte[] _data;
+        /** Offset of each line, followed by the length of the content. */
+        private final int[] _starts;
+    }
+
+    /** A line as a key of a hash map, equal to lines with the same
+     *  bytes. */
+    static class Line {
+        /** Constructor of the line of DATA from START to END. */
+        Line(byte[] data, int start, int end) {
+            _data = data;
+            _start = start;
+            _end = end;
+            int hash = 1;
+            for (int i = start; i < end; i += 1) {
+                hash = 31 * hash + data[i];
+            }
+            _hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Line)) {
+                return false;
+            }
+            Line line = (Line) other;
+            return _hash == line._hash && Arrays.equals(_data, _start, _end,
+                    line._data, line._start, line._end);
+        }
+
+        /** The bytes the line is in. */
+        private final byte[] _data;
+        /** Offset of the line. */
+        private final int _start;
+        /** Offset after the line. */
+        private final int _end;
+        /** Hash of the bytes of the line. */
+        private final int _hash;
+    }
+
+    /** The lines diffed from. */
+    private final Lines _a;
+    /** The lines diffed to. */
+    private final Lines _b;
+    /** Number of each line of _a; equal lines have equal numbers. */
+    private final int[] _aIds;
+    /** Number of each line of _b. */
+    private final int[] _bIds;
+    /** Edits turning _a into _b. */
+    private final List<Edit> _edits;
+}
@@ -0,0 +1,233 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/** Three-way merge of two contents changed from a common base, line by
+ *  line. The edits of each side against the base are walked together;
+ *  edits of one side that do not overlap any of the other are taken as
+ *  they are, and overlapping edits conflict unless both sides made the
+ *  same change. The result comes as a sequence of hunks produced one at
+ *  a time, each naming a range of lines of one of the three contents,
+ *  so it is written out without being built up in memory.
+ *  @author Huixuan Lin
+ */
+public class Diff3 {
+
+    /** Line starting the current side of a conflict. */
+    static final String OURS_MARKER = "<<<<<<< HEAD";
+    /** Line between the two sides of a conflict. */
+    static final String SEPARATOR = "=======";
+    /** Line ending a conflict. */
+    static final String THEIRS_MARKER = ">>>>>>>";
+
+    /** Constructor of the merge of OURS and THEIRS, both changed from
+     *  BASE. */
+    public Diff3(byte[] base, byte[] ours, byte[] theirs) {
+        _base = new Diff.Lines(base);
+        _ours = new Diff(_base, new Diff.Lines(ours));
+        _theirs = new Diff(_base, new Diff.Lines(theirs));
+    }
+
+    /** Return the hunks of the merge, in order. */
+    public Iterator<Hunk> hunks() {
+        return new HunkIterator();
+    }
+
+    /** Write the merge into OUT, with the sides of each conflict between
+     *  marker lines. Every marker ends with a line separator but the
+     *  last, when it ends the file.
+     *  @return true if there was a conflict */
+    public boolean write(OutputStream out) throws IOException {
+        boolean conflict = false;
+        String separator = System.lineSeparator();
+        Iterator<Hunk> hunks = hunks();
+        while (hunks.hasNext()) {
+            Hunk hunk = hunks.next();
+            if (!hunk.isConflict()) {
+                write(out, hunk.lines, hunk.start, hunk.end);
+                continue;
+            }
+            conflict = true;
+            out.write(bytes(OURS_MARKER + separator));
+            writeSide(out, hunk.lines, hunk.start, hunk.end);
+            out.write(bytes(SEPARATOR + separator));
+            writeSide(out, hunk.theirs, hunk.theirsStart, hunk.theirsEnd);
+            out.write(bytes(THEIRS_MARKER
+                    + (hunks.hasNext() ? separator : "")));
+        }
+        return conflict;
+    }
+
+    /** Write into OUT lines START to END of LINES. */
+    private static void write(OutputStream out, Diff.Lines lines,
+                              int start, int end) throws IOException {
+        out.write(lines.data(), lines.start(start),
+                lines.start(end) - lines.start(start));
+    }
+
+    /** Write into OUT lines START to END of LINES as a side of a
+     *  conflict, ending it with a line separator if it lacks one. */
+    private static void writeSide(OutputStream out, Diff.Lines lines,
+                                  int start, int end) throws IOException {
+        write(out, lines, start, end);
+        if (end > start && !lines.endsWithNewline(end - 1)) {
+            out.write(bytes(System.lineSeparator()));
+        }
+    }
+
+    /** Return TEXT in UTF-8. */
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** A run of lines of the merge: lines start to end of lines, or if
+     *  theirs is not null, a conflict between those lines of the current
+     *  side and lines theirsStart to theirsEnd of theirs. */
+    public static class Hunk {
+        /** Constructor of the hunk of lines START to END of LINES. */
+        Hunk(Diff.Lines lines, int start, int end) {
+            this(lines, start, end, null, 0, 0);
+        }
+
+        /** Constructor of the conflict between lines START to END of
+         *  LINES and lines THEIRSSTART to THEIRSEND of THEIRS. */
+        Hunk(Diff.Lines lines, int start, int end, Diff.Lines theirs,
+             int theirsStart, int theirsEnd) {
+            this.lines = lines;
+            this.start = start;
+            this.end = end;
+            this.theirs = theirs;
+            this.theirsStart = theirsStart;
+            this.theirsEnd = theirsEnd;
+        }
+
+        /** Return true if this hunk is a conflict. */
+        public boolean isConflict() {
+            return theirs != null;
+        }
+
+        /** Lines of the hunk, or of the current side of a conflict. */
+        final Diff.Lines lines;
+        /** First line of the hunk. */
+        final int start;
+        /** Line after the last line of the hunk. */
+        final int end;
+        /** Lines of the given side of a conflict, or null. */
+        final Diff.Lines theirs;
+        /** First line of the given side of a conflict. */
+        final int theirsStart;
+        /** Line after the last line of the given side of a conflict. */
+        final int theirsEnd;
+    }
+
+    /** Iterator producing the hunks of the merge as they are asked for.
+     *  Each step takes the base lines up to the next edit of either
+     *  side, then the edits of both sides that overlap or touch it. */
+    private class HunkIterator implements Iterator<Hunk> {
+        @Override
+        public boolean hasNext() {
+            if (_next == null) {
+                _next = advance();
+            }
+            return _next != null;
+        }
+
+        @Override
+        public Hunk next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Hunk result = _next;
+            _next = null;
+            return result;
+        }
+
+        /** Return the hunk after those produced, or null at the end. */
+        private Hunk advance() {
+            List<Diff.Edit> ours = _ours.edits(), theirs = _theirs.edits();
+            if (_i == ours.size() && _j == theirs.size()) {
+                if (_at < _base.size()) {
+                    Hunk rest = new Hunk(_base, _at, _base.size());
+                    _at = _base.size();
+                    return rest;
+                }
+                return null;
+            }
+            int lo = Math.min(
+                    _i < ours.size() ? ours.get(_i).aStart : Integer.MAX_VALUE,
+                    _j < theirs.size()
+                            ? theirs.get(_j).aStart : Integer.MAX_VALUE);
+            if (_at < lo) {
+                Hunk same = new Hunk(_base, _at, lo);
+                _at = lo;
+                return same;
+            }
+            int firstOurs = _i, firstTheirs = _j, hi = lo;
+            boolean grown = true;
+            while (grown) {
+                grown = false;
+                if (_i < ours.size() && ours.get(_i).aStart <= hi) {
+                    hi = Math.max(hi, ours.get(_i).aEnd);
+                    _i += 1;
+                    grown = true;
+                }
+                if (_j < theirs.size() && theirs.get(_j).aStart <= hi) {
+                    hi = Math.max(hi, theirs.get(_j).aEnd);
+                    _j += 1;
+                    grown = true;
+                }
+            }
+            _at = hi;
+            if (firstTheirs == _j) {
+                return side(_ours, firstOurs, _i, lo, hi);
+            } else if (firstOurs == _i) {
+                return side(_theirs, firstTheirs, _j, lo, hi);
+            }
+            Hunk mine = side(_ours, firstOurs, _i, lo, hi);
+            Hunk given = side(_theirs, firstTheirs, _j, lo, hi);
+            if (sameLines(mine, given)) {
+                return mine;
+            }
+            return new Hunk(mine.lines, mine.start, mine.end,
+                    given.lines, given.start, given.end);
+        }
+
+        /** Return the lines of the side DIFF turns base lines LO to HI
+         *  into, by its edits FIRST to LAST (exclusive). */
+        private Hunk side(Diff diff, int first, int last, int lo, int hi) {
+            Diff.Edit start = diff.edits().get(first);
+            Diff.Edit end = diff.edits().get(last - 1);
+            return new Hunk(diff.b(), lo + start.bStart - start.aStart,
+                    hi + end.bEnd - end.aEnd);
+        }
+
+        /** Return true if hunks A and B hold the same bytes. */
+        private boolean sameLines(Hunk a, Hunk b) {
+            return Arrays.equals(a.lines.data(), a.lines.start(a.start),
+                    a.lines.start(a.end), b.lines.data(),
+                    b.lines.start(b.start), b.lines.start(b.end));
+        }
+
+        /** Index of the next edit of the current side. */
+        private int _i;
+        /** Index of the next edit of the given side. */
+        private int _j;
+        /** First base line not yet produced. */
+        private int _at;
+        /** Hunk found by hasNext but not yet returned, or null. */
+        private Hunk _next;
+    }
+
+    /** Lines of the base. */
+    private final Diff.Lines _base;
+    /** Diff from the base to the current side. */
+    private final Diff _ours;
+    /** Diff from the base to the given side. */
+    private final Diff _theirs;
+}
@@ -0,0 +1,110 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+/** Tests of the three-way line merge and of merging file maps.
+ *  @author Huixuan Lin
+ */
+public class Diff3Test {
+
+    /** Line separator written around conflicts. */
+    private static final String NL = System.lineSeparator();
+
+    /** Return the content of LINES, each ended by a newline. */
+    private static byte[] content(String... lines) {
+        StringBuilder result = new StringBuilder();
+        for (String line : lines) {
+            result.append(line).append('\n');
+        }
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Return the merge of OURS and THEIRS from BASE, and whether it
+     *  conflicted in CONFLICT[0]. */
+    private static String merge(byte[] base, byte[] ours, byte[] theirs,
+                                boolean[] conflict) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        conflict[0] = new Diff3(base, ours, theirs).write(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void separateEditsMergeCleanly() throws IOException {
+        boolean[] conflict = new boolean[1];
+        String result = merge(content("a", "b", "c", "d", "e"),
+                content("A", "b", "c", "d", "e"),
+                content("a", "b", "c", "d", "E", "f"), conflict);
+        assertFalse(conflict[0]);
+        assertEquals("A\nb\nc\nd\nE\nf\n", result);
+    }
+
+    @Test
+    public void sameEditOnBothSidesMergesCleanly() throws IOException {
+        boolean[] conflict = new boolean[1];
+        String result = merge(content("a", "b", "c"),
+                content("a", "B", "c"), content("a", "B", "c"), conflict);
+        assertFalse(conflict[0]);
+        assertEquals("a\nB\nc\n", result);
+    }
+
+    @Test
+    public void overlappingEditsConflict() throws IOException {
+        boolean[] conflict = new boolean[1];
+        String result = merge(content("a", "b", "c", "d", "e"),
+                content("a", "ours", "c", "d", "e"),
+                content("a", "theirs", "c", "d", "E"), conflict);
+        assertTrue(conflict[0]);
+        assertEquals("a\n" + Diff3.OURS_MARKER + NL + "ours\n"
+                + Diff3.SEPARATOR + NL + "theirs\n" + Diff3.THEIRS_MARKER
+                + NL + "c\nd\nE\n", result);
+    }
+
+    @Test
+    public void removedAgainstChangedConflicts() throws IOException {
+        boolean[] conflict = new boolean[1];
+        String result = merge(content("a"), new byte[0],
+                "b".getBytes(StandardCharsets.UTF_8), conflict);
+        assertTrue(conflict[0]);
+        assertEquals(Diff3.OURS_MARKER + NL + Diff3.SEPARATOR + NL + "b"
+                + NL + Diff3.THEIRS_MARKER, result);
+    }
+
+    @Test
+    public void binaryFilesConflictWithoutMerging() throws IOException {
+        File repo = UnitTest.scratch();
+        try {
+            File objects = Utils.join(repo, "object");
+            objects.mkdir();
+            String base = Blob.save(objects, new byte[] {1, 0, 2, '\n'});
+            String ours = Blob.save(objects, new byte[] {1, 0, 3, '\n'});
+            String theirs = Blob.save(objects, new byte[] {1, 0, 4, '\n'});
+            String text = Blob.save(objects, content("x"));
+            HashMap<String, String> baseFiles = new HashMap<>();
+            HashMap<String, String> ourFiles = new HashMap<>();
+            HashMap<String, String> theirFiles = new HashMap<>();
+            baseFiles.put("bin", base);
+            ourFiles.put("bin", ours);
+            theirFiles.put("bin", theirs);
+            baseFiles.put("gone", base);
+            theirFiles.put("gone", theirs);
+            ourFiles.put("text", text);
+            theirFiles.put("text", text);
+            MergeTree merge = new MergeTree(objects).merge(baseFiles,
+                    ourFiles, theirFiles);
+            assertEquals(ours, merge.result().get("bin"));
+            assertEquals(theirs, merge.result().get("gone"));
+            assertEquals(text, merge.result().get("text"));
+            assertEquals("[bin, gone]", merge.conflicts().toString());
+        } finally {
+            UnitTest.delete(repo);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/** Tests of the line diff: that its edits turn one content into the
+ *  other, and that they are as few as can be.
+ *  @author Huixuan Lin
+ */
+public class DiffTest {
+
+    /** Return the content of LINES, each ended by a newline. */
+    private static byte[] content(String... lines) {
+        StringBuilder result = new StringBuilder();
+        for (String line : lines) {
+            result.append(line).append('\n');
+        }
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Return N random lines drawn by RANDOM from an alphabet of SIZE
+     *  lines, so that many of them repeat. */
+    private static String[] randomLines(Random random, int n, int size) {
+        String[] lines = new String[n];
+        for (int i = 0; i < n; i += 1) {
+            lines[i] = Character.toString('a' + random.nextInt(size));
+        }
+        return lines;
+    }
+
+    /** Return the length of the longest common subsequence of A and B. */
+    private static int lcs(String[] a, String[] b) {
+        int[][] table = new int[a.length + 1][b.length + 1];
+        for (int i = a.length - 1; i >= 0; i -= 1) {
+            for (int j = b.length - 1; j >= 0; j -= 1) {
+                table[i][j] = a[i].equals(b[j]) ? 1 + table[i + 1][j + 1]
+                        : Math.max(table[i + 1][j], table[i][j + 1]);
+            }
+        }
+        return table[0][0];
+    }
+
+    /** Check that DIFF turns its old lines into its new ones, with edits
+     *  in order and not touching, and return the number of lines they
+     *  delete and insert. */
+    private static int checkEdits(Diff diff) {
+        Diff.Lines a = diff.a(), b = diff.b();
+        int changed = 0, aAt = 0, bAt = 0;
+        List<Diff.Edit> edits = diff.edits();
+        for (Diff.Edit edit : edits) {
+            assertTrue("edits out of order", edit.aStart >= aAt);
+            assertTrue("empty edit", edit.aEnd > edit.aStart
+                    || edit.bEnd > edit.bStart);
+            assertEquals(edit.aStart - aAt, edit.bStart - bAt);
+            for (; aAt < edit.aStart; aAt += 1, bAt += 1) {
+                assertEquals(a.get(aAt), b.get(bAt));
+            }
+            changed += edit.aEnd - edit.aStart + edit.bEnd - edit.bStart;
+            aAt = edit.aEnd;
+            bAt = edit.bEnd;
+        }
+        for (int i = 1; i < edits.size(); i += 1) {
+            assertTrue("touching edits",
+                    edits.get(i).aStart > edits.get(i - 1).aEnd);
+        }
+        assertEquals(a.size() - aAt, b.size() - bAt);
+        for (; aAt < a.size(); aAt += 1, bAt += 1) {
+            assertEquals(a.get(aAt), b.get(bAt));
+        }
+        return changed;
+    }
+
+    @Test
+    public void randomDiffsAreMinimal() {
+        Random random = new Random(13);
+        for (int trial = 0; trial < 300; trial += 1) {
+            String[] a = randomLines(random, random.nextInt(40), 4);
+            String[] b = randomLines(random, random.nextInt(40), 4);
+            Diff diff = new Diff(content(a), content(b));
+            assertEquals(a.length + b.length - 2 * lcs(a, b),
+                    checkEdits(diff));
+        }
+    }
+
+    @Test
+    public void editedDiffsAreMinimal() {
+        Random random = new Random(31);
+        for (int trial = 0; trial < 100; trial += 1) {
+            String[] a = randomLines(random, 200, 26);
+            String[] b = a.clone();
+            for (int k = 0; k < 5; k += 1) {
+                b[random.nextInt(b.length)] = "changed " + k;
+            }
+            Diff diff = new Diff(content(a), content(b));
+            assertEquals(a.length + b.length - 2 * lcs(a, b),
+                    checkEdits(diff));
+        }
+    }
+
+    @Test
+    public void emptyAndEqualContents() {
+        assertTrue(new Diff(new byte[0], new byte[0]).edits().isEmpty());
+        assertTrue(new Diff(content("x", "y"), content("x", "y"))
+                .edits().isEmpty());
+        assertEquals(2, checkEdits(new Diff(new byte[0], content("x", "y"))));
+        assertEquals(2, checkEdits(new Diff(content("x", "y"), new byte[0])));
+    }
+
+    @Test
+    public void unifiedFormat() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new Diff(content("a", "b", "c"), "a\nB\nc".getBytes(
+                StandardCharsets.UTF_8)).format(new PrintStream(bytes),
+                "f", "f");
+        assertEquals("--- a/f\n+++ b/f\n@@ -1,3 +1,3 @@\n a\n-b\n-c\n"
+                + "+B\n+c\n\\ No newline at end of file\n",
+                bytes.toString(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,177 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Mark and sweep of the objects of one repository. Marking walks the
+ *  commits from each root on a pool of worker threads, sharing one set
+ *  of marked ids so that no commit or tree node is walked twice, and
+ *  marks every tree node and blob they use. Sweeping deletes loose
+ *  objects, chunked blobs and chunks that were not marked, and
+ *  rewrites the packs that hold unmarked objects. Anything written
+ *  within the grace period is kept whether marked or not, since a
+ *  command running alongside may not have recorded it yet.
+ *  @author Huixuan Lin
+ */
+public class GarbageCollector {
+
+    /** Largest number of threads commits are walked on. */
+    static final int THREADS = Runtime.getRuntime().availableProcessors();
+    /** Time in milliseconds an unmarked object is kept after it was
+     *  written. */
+    static final long GRACE = 60L * 60 * 1000;
+
+    /** Constructor of a collector of object directory OBJECTDIR. */
+    public GarbageCollector(File objectDir) {
+        _objectDir = objectDir;
+        _packDir = Pack.dirFor(objectDir);
+        _chunks = Utils.join(objectDir.getParentFile(), "chunks");
+        _manifests = Utils.join(objectDir.getParentFile(), "manifest");
+    }
+
+    /** Mark the commits with ids HEADS and all their ancestors, with
+     *  the tree nodes and blobs they use, walking from each head on its own
+     *  thread. */
+    public void markCommits(Collection<String> heads) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(heads.size(), THREADS)));
+        List<Future<Void>> results = new ArrayList<>();
+        for (String head : heads) {
+            results.add(pool.submit(() -> {
+                walk(head);
+                return null;
+            }));
+        }
+        pool.shutdown();
+        for (Future<Void> result : results) {
+            Main.awaitResult(result);
+        }
+    }
+
+    /** Mark the blob with SHA1 code. */
+    public void markBlob(String sha1) {
+        _marked.add(sha1);
+    }
+
+    /** Delete what was not marked and was written more than GRACEPERIOD
+     *  milliseconds ago. */
+    public void sweep(long gracePeriod) throws IOException {
+        long cutoff = System.currentTimeMillis() - gracePeriod;
+        String[] loose = _objectDir.list();
+        if (loose != null) {
+            for (String name : loose) {
+                if (!_marked.contains(name)) {
+                    delete(Utils.join(_objectDir, name), cutoff);
+                }
+            }
+        }
+        long packBytes = size(_packDir);
+        _removed += Pack.rewrite(_packDir, cutoff, _marked::contains);
+        _reclaimed += packBytes - size(_packDir);
+        Set<String> liveChunks = new HashSet<>();
+        String[] manifests = _manifests.list();
+        if (manifests != null) {
+            ChunkStore store = ChunkStore.forObjects(_objectDir);
+            for (String name : manifests) {
+                File manifest = Utils.join(_manifests, name);
+                if (_marked.contains(name) || !delete(manifest, cutoff)) {
+                    liveChunks.addAll(store.manifest(name));
+                }
+            }
+        }
+        String[] chunks = _chunks.list();
+        if (chunks != null) {
+            for (String name : chunks) {
+                if (!liveChunks.contains(name)) {
+                    delete(Utils.join(_chunks, name), cutoff);
+                }
+            }
+        }
+    }
+
+    /** Return the number of objects marked. */
+    public int marked() {
+        return _marked.size();
+    }
+
+    /** Return the number of objects and chunks removed. */
+    public int removed() {
+        return _removed;
+    }
+
+    /** Return the number of bytes freed. */
+    public long reclaimed() {
+        return _reclaimed;
+    }
+
+    /** Mark the commit with id HEAD and its ancestors not yet marked,
+     *  with the tree nodes and blobs they use. */
+    private void walk(String head) {
+        ObjectDatabase objects = ObjectDatabase.forObjects(_objectDir);
+        Stack<String> toVisit = new Stack<>();
+        toVisit.push(head);
+        while (!toVisit.isEmpty()) {
+            String id = toVisit.pop();
+            if (id.isEmpty() || !_marked.add(id)) {
+                continue;
+            }
+            Commit commit = objects.commit(id);
+            TreeNode.walk(_objectDir, commit.getFileSha1(), _marked::add,
+                    _marked::add);
+            toVisit.push(commit.getSecondParentId());
+            toVisit.push(commit.getParentId());
+        }
+    }
+
+    /** Delete FILE if it was last written before CUTOFF, counting what
+     *  it frees.
+     *  @return true if FILE was deleted */
+    private boolean delete(File file, long cutoff) {
+        long length = file.length();
+        if (!file.isFile() || file.lastModified() >= cutoff
+                || !file.delete()) {
+            return false;
+        }
+        ObjectDatabase.forObjects(_objectDir).forget(file.getName());
+        _removed += 1;
+        _reclaimed += length;
+        return true;
+    }
+
+    /** Return the total length of the files in DIR. */
+    private static long size(File dir) {
+        long total = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                total += file.length();
+            }
+        }
+        return total;
+    }
+
+    /** The object directory collected. */
+    private final File _objectDir;
+    /** The pack directory of _objectDir. */
+    private final File _packDir;
+    /** The directory of chunks of _objectDir. */
+    private final File _chunks;
+    /** The directory of manifests of chunked blobs of _objectDir. */
+    private final File _manifests;
+    /** Ids of the objects marked. */
+    private final Set<String> _marked = ConcurrentHashMap.newKeySet();
+    /** Number of objects and chunks removed. */
+    private int _removed;
+    /** Number of bytes freed. */
+    private long _reclaimed;
+}
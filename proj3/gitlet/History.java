@@ -1,81 +1,153 @@
 package gitlet;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.Serializable;
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
-/** Class of history which store all commit history.
+/** Class of history which store all commit history. Commits live in
+ *  the object directory; the history itself is only an index file
+ *  listing their ids in the order they were made.
  * @author Huixuan Lin
  */
-public class History implements Serializable {
-    /** Constructor of history. */
+public class History {
+    /** Constructor of the history of the current working directory. */
     public History() {
-        _commits = new HashMap<>();
+        this(Utils.join(Main.HISTORY, "current"), Main.OBJECT);
     }
 
-    /** Add COMMIT into the commit history. */
+    /** Constructor of history with commit index INDEX, whose commits
+     *  are stored in object directory OBJECTS. */
+    public History(File index, File objects) {
+        _index = index;
+        _objects = objects;
+    }
+
+    /** Add COMMIT into the commit history, unless it is there already. */
     public void addCommit(Commit commit) throws IOException {
-        commit.getTree().saveTree();
-        commit.saveCommit();
-        _commits.put(commit.getCommitSha1(), commit);
+        String id = commit.getCommitSha1();
+        boolean known = existsLocally(id) && contains(id);
+        commit.saveCommit(_objects);
+        if (!known) {
+            addCommitId(id);
+        }
+    }
+
+    /** Add the commit with ID, already stored in the object directory,
+     *  into the commit history. */
+    public void addCommitId(String id) throws IOException {
+        CommitLog log = log();
+        try (FileOutputStream out = new FileOutputStream(_index, true)) {
+            out.write((id + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        log.append(Commit.fromFile(_objects, id));
+    }
+
+    /** Return the compact log of this history, first bringing it up to
+     *  date with the index if it was written without it. */
+    public CommitLog log() throws IOException {
+        CommitLog log = new CommitLog(_index);
+        if (log.size() != _index.length() / (Utils.UID_LENGTH + 1)) {
+            log.sync(getCommitIds(), _objects);
+        }
+        return log;
     }
 
     /** Return true if there is no commit history. */
     public boolean isEmpty() {
-        return _commits.isEmpty();
+        return _index.length() == 0;
+    }
+
+    /** Return the ids of all commit history, oldest first. */
+    public List<String> getCommitIds() {
+        List<String> result = new ArrayList<>();
+        if (_index.exists()) {
+            for (String id : Utils.readContentsAsString(_index).split("\n")) {
+                if (!id.isEmpty()) {
+                    result.add(id);
+                }
+            }
+        }
+        return result;
     }
 
     /** Return all commit history. */
-    public HashMap<String, Commit> getCommits() {
-        return _commits;
+    public List<Commit> getCommits() {
+        List<Commit> result = new ArrayList<>();
+        for (String id : getCommitIds()) {
+            Commit commit = readCommit(id);
+            if (commit != null) {
+                result.add(commit);
+            }
+        }
+        return result;
     }
 
-    /** Return the commit with commit id COMMITID. */
-    public Commit getCommit(String commitId) {
-        return _commits.get(commitId);
+    /** Return the commit with commit id COMMITID read from the object
+     *  directory, or null if it is not stored there. The commit need not
+     *  belong to this history: fetched commits share the directory. */
+    public Commit readCommit(String commitId) {
+        return existsLocally(commitId)
+                ? Commit.fromFile(_objects, commitId) : null;
     }
 
-    /** Return true if there is a commit with id COMMITID. */
-    public boolean hasCommit(String commitId) {
-        return _commits.containsKey(commitId);
+    /** Return true if a commit with id COMMITID is stored in the object
+     *  directory, whether or not it belongs to this history. */
+    public boolean existsLocally(String commitId) {
+        return commitId != null && !commitId.isEmpty()
+                && Commit.exists(_objects, commitId);
     }
 
-    /** Save the history to a file as future use. */
+    /** Return true if the commit with id COMMITID belongs to this
+     *  history. This reads the whole index. */
+    public boolean contains(String commitId) {
+        return getCommitIds().contains(commitId);
+    }
+
+    /** Save the history to a file as future use. Commits are
+     *  recorded as they are added, so this only creates the index. */
     public void saveHistory() throws IOException {
-        Utils.join(Main.HISTORY, "current").createNewFile();
-        Utils.writeObject(Utils.join(Main.HISTORY, "current"), this);
+        _index.createNewFile();
     }
 
     /** Save the history of REMOTE to a file as future use. */
     public void saveHistory(String remote) throws IOException {
-        Utils.join(Main.HISTORY, remote).createNewFile();
-        Utils.writeObject(Utils.join(Main.HISTORY, remote), this);
+        File copy = Utils.join(Main.HISTORY, remote);
+        copy.createNewFile();
+        if (_index.exists()) {
+            Utils.writeContents(copy, Utils.readContents(_index));
+        }
     }
 
-    /** Reads in and deserializes a history.
-     * @return History read from file */
+    /** Reads in a history.
+     * @return History of BRANCH */
     public static History fromFile(String branch) {
         if (!branch.contains("-")) {
             if (!Utils.join(Main.HISTORY, "current").exists()) {
                 throw new IllegalArgumentException(
                         "No history file found.");
             }
-            return Utils.readObject(Utils.join(Main.HISTORY, "current"), History.class);
+            return new History();
         } else {
             return remoteFromFile(branch.substring(0, branch.indexOf("-")));
         }
 
     }
 
-    /** Reads in and deserializes a history of REMOTE.
+    /** Reads in a history of REMOTE.
      * @return History read from file */
     public static History remoteFromFile(String remote) {
         if (!Main.HISTORY.exists()) {
             throw new IllegalArgumentException(
                     "No history file found.");
         }
-        return Utils.readObject(Utils.join(Main.HISTORY, remote), History.class);
+        return new History(Utils.join(Main.HISTORY, remote), Main.OBJECT);
     }
-    /** History of commit. */
-    private HashMap<String, Commit> _commits;
+
+    /** File listing the ids of commits in this history, one per line. */
+    private final File _index;
+    /** Object directory in which commits of this history are stored. */
+    private final File _objects;
 
 }
@@ -0,0 +1,211 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/** Stat cache of the working directory, like git's index. For each
+ *  path it remembers the size, modification time and inode the file
+ *  had when it was last hashed, together with that hash, so unchanged
+ *  files need not be read again. Entries may be looked up and updated
+ *  from several threads at once.
+ *  @author Huixuan Lin
+ */
+public class Index {
+
+    /** Magic number at the front of an index file. */
+    static final int MAGIC = 0x47494e31;
+
+    /** Constructor of an empty index of the current working directory
+     *  to be saved in FILE. */
+    public Index(File file) {
+        this(file, Main.CWD);
+    }
+
+    /** Constructor of an empty index of working directory WORKDIR to be
+     *  saved in FILE. */
+    public Index(File file, File workDir) {
+        _file = file;
+        _workDir = workDir;
+        _entries = new ConcurrentHashMap<>();
+    }
+
+    /** Reads in the index of the current working directory saved in
+     *  FILE, or an empty one if FILE does not exist or cannot be read.
+     *  @return Index read from file */
+    public static Index fromFile(File file) {
+        return fromFile(file, Main.CWD);
+    }
+
+    /** Reads in the index of working directory WORKDIR saved in FILE.
+     *  @return Index read from file */
+    public static Index fromFile(File file, File workDir) {
+        Index index = new Index(file, workDir);
+        if (!file.exists()) {
+            return index;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                return index;
+            }
+            index._savedAt = in.readLong();
+            for (int i = in.readInt(); i > 0; i -= 1) {
+                Entry entry = new Entry();
+                String path = in.readUTF();
+                entry.size = in.readLong();
+                entry.modified = in.readLong();
+                entry.inode = in.readLong();
+                entry.sha1 = in.readUTF();
+                index._entries.put(path, entry);
+            }
+        } catch (IOException excp) {
+            index._entries.clear();
+            index._dirty = true;
+        }
+        return index;
+    }
+
+    /** Return the SHA1 code of the content of the working file at PATH,
+     *  or null if there is no such file. Files whose size, modification
+     *  time and inode are unchanged since they were last hashed are not
+     *  read again. */
+    public String sha1(String path) {
+        File file = Utils.join(_workDir, path);
+        Entry stat = stat(file);
+        if (stat == null) {
+            if (_entries.remove(path) != null) {
+                _dirty = true;
+            }
+            return null;
+        }
+        Entry entry = _entries.get(path);
+        if (entry != null && entry.size == stat.size
+                && entry.modified == stat.modified
+                && entry.inode == stat.inode
+                && stat.modified < _savedAt) {
+            return entry.sha1;
+        }
+        stat.sha1 = Blob.hash(file);
+        _entries.put(path, stat);
+        _dirty = true;
+        return stat.sha1;
+    }
+
+    /** Return the SHA1 code recorded for the working file at PATH when
+     *  it was last hashed or written, or null if none is, without
+     *  looking at the file. */
+    public String recorded(String path) {
+        Entry entry = _entries.get(path);
+        return entry == null ? null : entry.sha1;
+    }
+
+    /** Record that the working file at PATH now has content with
+     *  SHA1 code, as when it has just been written from a blob. */
+    public void update(String path, String sha1) {
+        Entry stat = stat(Utils.join(_workDir, path));
+        if (stat == null) {
+            remove(path);
+        } else {
+            stat.sha1 = sha1;
+            _entries.put(path, stat);
+            _dirty = true;
+        }
+    }
+
+    /** Forget the working file at PATH. */
+    public void remove(String path) {
+        if (_entries.remove(path) != null) {
+            _dirty = true;
+        }
+    }
+
+    /** Save the index to its file if it has changed. Files modified
+     *  no earlier than this save are hashed again on the next use,
+     *  since a later change in the same instant would go unnoticed. */
+    public void save() throws IOException {
+        if (!_dirty) {
+            return;
+        }
+        _savedAt = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(_file)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(_savedAt);
+            out.writeInt(_entries.size());
+            for (String path : _entries.keySet()) {
+                Entry entry = _entries.get(path);
+                out.writeUTF(path);
+                out.writeLong(entry.size);
+                out.writeLong(entry.modified);
+                out.writeLong(entry.inode);
+                out.writeUTF(entry.sha1);
+            }
+        }
+        _dirty = false;
+    }
+
+    /** Return the stat data of FILE, without a hash, or null if FILE is
+     *  not a plain file. */
+    private static Entry stat(File file) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(
+                    file.toPath(), BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                return null;
+            }
+            Entry entry = new Entry();
+            entry.size = attributes.size();
+            entry.modified = attributes.lastModifiedTime().
+                    to(TimeUnit.NANOSECONDS);
+            entry.inode = inode(file);
+            return entry;
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Return the inode number of FILE, or 0 where the file system
+     *  does not report one. */
+    private static long inode(File file) {
+        try {
+            Object inode = Files.getAttribute(file.toPath(), "unix:ino");
+            return inode instanceof Number ? ((Number) inode).longValue() : 0;
+        } catch (IOException | UnsupportedOperationException
+                 | IllegalArgumentException excp) {
+            return 0;
+        }
+    }
+
+    /** The stat data and hash recorded for one path. */
+    private static class Entry {
+        /** Size of the file in bytes. */
+        private long size;
+        /** Modification time of the file in nanoseconds. */
+        private long modified;
+        /** Inode number of the file. */
+        private long inode;
+        /** SHA1 code of the content of the file. */
+        private String sha1;
+    }
+
+    /** The file this index is saved in. */
+    private final File _file;
+    /** The working directory whose files are indexed. */
+    private final File _workDir;
+    /** Recorded entries, keyed by path. */
+    private final ConcurrentHashMap<String, Entry> _entries;
+    /** Time of the last save in nanoseconds since the epoch. */
+    private long _savedAt;
+    /** True if entries changed since the index was read. */
+    private volatile boolean _dirty;
+}
@@ -0,0 +1,277 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/** Check of the integrity of one repository. Every stored object, loose,
+ *  packed or chunked, and every chunk is read again and rehashed, and
+ *  every commit is checked to have its tree nodes, blobs and parents. The
+ *  work is split over a fork-join pool, each task checking objects one
+ *  at a time, so no more than a few objects are ever held at once.
+ *  @author Huixuan Lin
+ */
+public class IntegrityCheck {
+
+    /** Largest number of objects a task checks without splitting. */
+    static final int BATCH = 64;
+    /** Largest loose object read whole to be parsed as a commit;
+     *  larger ones can only be blobs or tree nodes. */
+    static final long RECORD_LIMIT = 1L << 20;
+
+    /** Constructor of a check of object directory OBJECTDIR. */
+    public IntegrityCheck(File objectDir) {
+        _objectDir = objectDir;
+        _packDir = Pack.dirFor(objectDir);
+        _chunks = Utils.join(objectDir.getParentFile(), "chunks");
+        _manifests = Utils.join(objectDir.getParentFile(), "manifest");
+    }
+
+    /** Rehash every object and chunk, recording those whose content no
+     *  longer matches its id.
+     *  @return the number of objects and chunks checked */
+    public int verifyObjects() {
+        List<String> loose = list(_objectDir);
+        List<String> packed = Pack.ids(_packDir);
+        List<String> manifests = list(_manifests);
+        List<String> chunks = list(_chunks);
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            pool.invoke(new Verify(loose, 0, loose.size(), this::checkLoose));
+            pool.invoke(new Verify(packed, 0, packed.size(),
+                    this::checkPacked));
+            pool.invoke(new Verify(manifests, 0, manifests.size(),
+                    this::checkChunked));
+            pool.invoke(new Verify(chunks, 0, chunks.size(),
+                    this::checkChunk));
+        } finally {
+            pool.shutdown();
+        }
+        return loose.size() + packed.size() + manifests.size()
+                + chunks.size();
+    }
+
+    /** Check that the branch heads HEADS, mapping branch names to commit
+     *  ids, or to null where a branch could not be read, and the commits
+     *  of HISTORY exist, and that every one of those commits has its
+     *  tree, its blobs and its parents. */
+    public void verifyCommits(Map<String, String> heads,
+                              Collection<String> history) {
+        LinkedHashSet<String> commits = new LinkedHashSet<>(history);
+        for (Map.Entry<String, String> head : heads.entrySet()) {
+            if (head.getValue() == null) {
+                _problems.add("unreadable branch " + head.getKey());
+            } else if (!Commit.exists(_objectDir, head.getValue())) {
+                _problems.add("missing commit " + head.getValue()
+                        + " at branch " + head.getKey());
+            } else {
+                commits.add(head.getValue());
+            }
+        }
+        List<String> ids = new ArrayList<>(commits);
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            pool.invoke(new Verify(ids, 0, ids.size(), this::checkCommit));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Return the problems found, sorted. */
+    public List<String> problems() {
+        List<String> result = new ArrayList<>(_problems);
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Check the loose object with ID. Objects that may be commit
+     *  records are read and parsed; others, tree nodes among them, are
+     *  hashed as blobs through mapped windows. */
+    private void checkLoose(String id) {
+        File file = Utils.join(_objectDir, id);
+        int magic = 0;
+        try (DataInputStream in = new DataInputStream(
+                new FileInputStream(file))) {
+            if (file.length() >= 4) {
+                magic = in.readInt();
+            }
+        } catch (IOException excp) {
+            _problems.add("unreadable object " + id);
+            return;
+        }
+        boolean record = magic == Commit.MAGIC
+                && file.length() <= RECORD_LIMIT;
+        if (record ? !matches(id, Utils.readContents(file))
+                : !Blob.hash(file).equals(id)) {
+            _problems.add("corrupt object " + id);
+        }
+    }
+
+    /** Check the packed object with ID. */
+    private void checkPacked(String id) {
+        if (!matches(id, Pack.find(_packDir, id))) {
+            _problems.add("corrupt packed object " + id);
+        }
+    }
+
+    /** Check the chunked blob with ID: that its chunks exist and that
+     *  together they hash to ID. */
+    private void checkChunked(String id) {
+        MessageDigest md = sha1();
+        for (String chunk : ChunkStore.forObjects(_objectDir).manifest(id)) {
+            File file = Utils.join(_chunks, chunk);
+            if (!file.isFile()) {
+                _problems.add("missing chunk " + chunk + " of blob " + id);
+                return;
+            }
+            md.update(Utils.readContents(file));
+        }
+        if (!Pack.toHex(md.digest()).equals(id)) {
+            _problems.add("corrupt blob " + id);
+        }
+    }
+
+    /** Check the chunk with ID. */
+    private void checkChunk(String id) {
+        if (!Utils.sha1(Utils.readContents(
+                Utils.join(_chunks, id))).equals(id)) {
+            _problems.add("corrupt chunk " + id);
+        }
+    }
+
+    /** Check that the commit with ID has its tree nodes, blobs and
+     *  parents. Nodes shared with commits already checked are not
+     *  walked again. */
+    private void checkCommit(String id) {
+        if (!Commit.exists(_objectDir, id)) {
+            _problems.add("missing commit " + id + " in history");
+            return;
+        }
+        Commit commit = ObjectDatabase.forObjects(_objectDir).commit(id);
+        TreeNode.walk(_objectDir, commit.getFileSha1(), node -> {
+            if (!_walked.add(node)) {
+                return false;
+            } else if (!Blob.exists(_objectDir, node)) {
+                _problems.add("missing tree " + node + " of commit " + id);
+                return false;
+            }
+            return true;
+        }, blob -> {
+            if (_walked.add(blob) && !Blob.exists(_objectDir, blob)) {
+                _problems.add("missing blob " + blob + " of commit " + id);
+            }
+        });
+        for (String parent : new String[] {commit.getParentId(),
+            commit.getSecondParentId()}) {
+            if (!parent.isEmpty() && !Commit.exists(_objectDir, parent)) {
+                _problems.add("missing parent " + parent
+                        + " of commit " + id);
+            }
+        }
+    }
+
+    /** Return true if CONTENT is a valid object with ID: a blob or tree
+     *  node that hashes to ID, or a commit whose tree, parents, message
+     *  and time stamps hash to ID. */
+    private boolean matches(String id, byte[] content) {
+        if (Utils.sha1(content).equals(id)) {
+            return true;
+        } else if (Commit.isCommit(content)) {
+            Commit commit = Commit.fromBytes(content, _objectDir);
+            return commit.getCommitSha1().equals(id)
+                    && commit.hash().equals(id);
+        }
+        return false;
+    }
+
+    /** Return the names of the files in DIR, less temporary ones. */
+    private static List<String> list(File dir) {
+        List<String> names = new ArrayList<>();
+        List<String> files = Utils.plainFilenamesIn(dir);
+        if (files != null) {
+            for (String name : files) {
+                if (!name.endsWith(".tmp")) {
+                    names.add(name);
+                }
+            }
+        }
+        return names;
+    }
+
+    /** Return a new SHA-1 digest. */
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException(
+                    "System does not support SHA-1");
+        }
+    }
+
+    /** Task checking a range of ids, split in halves until small. */
+    private class Verify extends RecursiveAction {
+        /** Constructor of the task checking ids LO to HI of IDS by
+         *  CHECK. */
+        Verify(List<String> ids, int lo, int hi, Consumer<String> check) {
+            _ids = ids;
+            _lo = lo;
+            _hi = hi;
+            _check = check;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo > BATCH) {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Verify(_ids, _lo, mid, _check),
+                        new Verify(_ids, mid, _hi, _check));
+                return;
+            }
+            for (int i = _lo; i < _hi; i += 1) {
+                try {
+                    _check.accept(_ids.get(i));
+                } catch (IllegalArgumentException excp) {
+                    _problems.add("unreadable object " + _ids.get(i));
+                }
+            }
+        }
+
+        /** Ids checked. */
+        private final List<String> _ids;
+        /** First id checked. */
+        private final int _lo;
+        /** Index after the last id checked. */
+        private final int _hi;
+        /** Check of one id. */
+        private final Consumer<String> _check;
+    }
+
+    /** The object directory checked. */
+    private final File _objectDir;
+    /** The pack directory of _objectDir. */
+    private final File _packDir;
+    /** The directory of chunks of _objectDir. */
+    private final File _chunks;
+    /** The directory of manifests of chunked blobs of _objectDir. */
+    private final File _manifests;
+    /** Ids of the tree nodes and blobs of commits already checked. */
+    private final Set<String> _walked = ConcurrentHashMap.newKeySet();
+    /** Problems found. */
+    private final Queue<String> _problems = new ConcurrentLinkedQueue<>();
+}
@@ -1,12 +1,33 @@
 package gitlet;
 import org.checkerframework.checker.units.qual.C;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Stack;
 import java.util.HashSet;
 import java.util.HashMap;
 import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  * import java.util.Set;
@@ -30,6 +51,19 @@ public class Main {
     static final File HISTORY = Utils.join(REPO, "history");
     /** GitLet remote directory. */
     static final File REMOTE = Utils.join(REPO, "remote");
+    /** GitLet pack directory. */
+    static final File PACK = Utils.join(REPO, "pack");
+    /** GitLet stat cache of the working directory. */
+    static final File INDEX = Utils.join(REPO, "index");
+    /** Directory of chunks of large blobs. */
+    static final File CHUNKS = Utils.join(REPO, "chunks");
+    /** Directory of manifests of chunked blobs. */
+    static final File MANIFEST = Utils.join(REPO, "manifest");
+    /** Largest number of candidates listed for an ambiguous id. */
+    static final int AMBIGUOUS_SHOWN = 10;
+    /** Largest number of threads add hashes and stores files on. */
+    static final int ADD_THREADS =
+            Runtime.getRuntime().availableProcessors();
 
     /** Usage: java gitlet.Main ARGS, where ARGS contains
      *  <COMMAND> <OPERAND> .... */
@@ -44,11 +78,24 @@ public class Main {
             if (!REPO.exists()) {
                 exitWithError("Not in an initialized Gitlet directory.");
             }
-            _branch = Branch.fromFile();
-            _stagingArea = Stage.fromFile(_branch.getName());
-            _history = History.fromFile(_branch.getName());
+            load();
             switchMethod(args);
         }
+        save();
+    }
+
+    /** Read the current branch, its stage and history and the stat
+     *  cache of the repository in CWD. */
+    static void load() {
+        _branch = Branch.fromFile();
+        _stagingArea = Stage.fromFile(_branch.getName());
+        _history = History.fromFile(_branch.getName());
+        _index = Index.fromFile(INDEX);
+    }
+
+    /** Write back the state read by load, as changed by a command. */
+    static void save() throws IOException {
+        _index.save();
         _stagingArea.saveStage();
         _history.saveHistory();
         saveCurrentBranch();
@@ -109,6 +156,27 @@ public class Main {
         case "pull":
             pull(args);
             break;
+        case "repack":
+            repack(args);
+            break;
+        case "merge-base":
+            mergeBase(args);
+            break;
+        case "bundle":
+            bundle(args);
+            break;
+        case "diff":
+            diff(args);
+            break;
+        case "blame":
+            blame(args);
+            break;
+        case "gc":
+            gc(args);
+            break;
+        case "fsck":
+            fsck(args);
+            break;
         default:
             exitWithError("No command with that name exists.");
         }
@@ -120,12 +188,16 @@ public class Main {
      *     The functionality for erroring/exit codes is different within Gitlet
      *     so DO NOT use this as a reference.
      *     Refer to the spec for more information.
+     * Inside the daemon, a GitletException ends the command instead.
      * @param message message to print
      */
     public static void exitWithError(String message) {
         if (message != null && !message.equals("")) {
             System.out.println(message);
         }
+        if (_resident) {
+            throw new GitletException(message);
+        }
         System.exit(0);
     }
 
@@ -144,10 +216,12 @@ public class Main {
         STAGE.mkdir();
         REMOTE.mkdir();
         HISTORY.mkdir();
+        PACK.mkdir();
         _stagingArea = new Stage("master");
+        _index = new Index(INDEX);
         new Branch("master").saveBranch();
         _branch = Branch.fromFile("master");
-        Commit tracked = new Commit(null, "initial commit");
+        Commit tracked = Commit.initial();
         _history.addCommit(tracked);
         _branch.addCommit(tracked.getCommitSha1());
 
@@ -155,33 +229,115 @@ public class Main {
 
 
     /**
-     * Adds a copy of the files as it currently exists to the staging area.
-     * @param args Array in format: {'add', fileName}
+     * Adds a copy of the files as they currently exist to the staging
+     * area. Directories, including '.', add every file beneath them.
+     * Files are hashed and stored on a pool of worker threads, each
+     * distinct content being written once.
+     * @param args Array in format: {'add', path, ...}
      */
     public static void add(String[] args) throws IOException {
-        if (!Utils.join(CWD, args[1]).exists()) {
-            exitWithError("File does not exist.");
-        }
-        boolean hasMarkRemove = false;
-        if (_stagingArea.hasTree()) {
-            if (_stagingArea.getRemoval().contains(args[1])) {
-                _stagingArea.getRemoval().remove(args[1]);
-                hasMarkRemove = true;
+        LinkedHashSet<String> paths = new LinkedHashSet<>();
+        for (int i = 1; i < args.length; i += 1) {
+            if (!Utils.join(CWD, args[i]).exists()) {
+                exitWithError("File does not exist.");
             }
+            expandPath(args[i], paths);
         }
-        if (!hasMarkRemove) {
-            Blob newTracked = new Blob(args[1]);
-            if (!_history.isEmpty() && _history.
-                    getCommit(_branch.getHead()).getFiles() != null
-                    && _history.getCommit(_branch.getHead()).
-                    getFiles().containsKey(args[1])
-                    && _history.getCommit(_branch.getHead()).
-                    getFiles().get(args[1]).equals(newTracked.getSha1())) {
-                _stagingArea.rm(args[1]);
+        HashMap<String, String> headFiles = _history.isEmpty() ? null
+                : _history.readCommit(_branch.getHead()).getFiles();
+        HashMap<String, String> staged = _stagingArea.hasTree()
+                ? new HashMap<>(_stagingArea.getStaged()) : new HashMap<>();
+        List<String> toHash = new ArrayList<>();
+        for (String path : paths) {
+            if (_stagingArea.hasTree()
+                    && _stagingArea.getRemoval().contains(path)) {
+                _stagingArea.getRemoval().remove(path);
             } else {
-                _stagingArea.add(newTracked);
+                toHash.add(path);
             }
         }
+        ConcurrentHashMap<String, Boolean> stored = new ConcurrentHashMap<>();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1,
+                Math.min(toHash.size(), ADD_THREADS)));
+        List<Future<Blob>> results = new ArrayList<>();
+        for (String path : toHash) {
+            results.add(pool.submit(() -> {
+                String sha1 = _index.sha1(path);
+                if (headFiles != null && sha1.equals(headFiles.get(path))
+                        || sha1.equals(staged.get(path))) {
+                    return new Blob(path, sha1);
+                }
+                Blob blob = new Blob(path, sha1);
+                if (stored.putIfAbsent(sha1, true) == null) {
+                    blob.saveContent();
+                }
+                return blob;
+            }));
+        }
+        pool.shutdown();
+        for (int i = 0; i < toHash.size(); i += 1) {
+            Blob blob = awaitResult(results.get(i));
+            String path = toHash.get(i);
+            if (headFiles != null
+                    && blob.getSha1().equals(headFiles.get(path))) {
+                _stagingArea.rm(path);
+            } else if (!blob.getSha1().equals(staged.get(path))) {
+                _stagingArea.add(blob);
+            }
+        }
+    }
+
+    /** Help method for add. Add to PATHS the working file PATH, or every
+     *  file under PATH if it is a directory, skipping hidden files and
+     *  the files status ignores. */
+    public static void expandPath(String path,
+                                  Set<String> paths) throws IOException {
+        File start = Utils.join(CWD, path);
+        if (!start.isDirectory()) {
+            paths.add(path);
+            return;
+        }
+        String prefix = path.equals(".") ? ""
+                : path.replaceAll("/+$", "") + "/";
+        try (Stream<Path> walk = Files.walk(start.toPath())) {
+            walk.filter(Files::isRegularFile).forEach(file -> {
+                String name = start.toPath().relativize(file).toString().
+                        replace(File.separatorChar, '/');
+                if (!isIgnored(prefix + name)) {
+                    paths.add(prefix + name);
+                }
+            });
+        }
+    }
+
+    /** Return true if the working file PATH is never tracked: it, or a
+     *  directory on the way to it, is hidden, or it is a Makefile or
+     *  an .iml file at the top level. */
+    public static boolean isIgnored(String path) {
+        for (String part : path.split("/")) {
+            if (part.startsWith(".")) {
+                return true;
+            }
+        }
+        return path.equals("Makefile") || path.endsWith(".iml");
+    }
+
+    /** Help method for add and checkouts. Return the value of FUTURE,
+     *  rethrowing what its task threw. */
+    static <T> T awaitResult(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalArgumentException(cause);
+        }
     }
 
     /**
@@ -200,9 +356,8 @@ public class Main {
         _stagingArea.commit();
         Commit tracked = new Commit(_stagingArea.getTree(), args[1]);
         _stagingArea.clear();
-        tracked.addAncestors(_branch.getCommits());
         if (!_history.isEmpty()) {
-            tracked.setParent(_history.getCommit(_branch.getHead()));
+            tracked.setParent(_history.readCommit(_branch.getHead()));
         }
         _history.addCommit(tracked);
         _branch.addCommit(tracked.getCommitSha1());
@@ -227,7 +382,7 @@ public class Main {
                 containsKey(args[1])) {
             removed = true;
             _stagingArea.toRemove(args[1]);
-            Utils.restrictedDelete(Utils.join(CWD, args[1]));
+            new Checkout(CWD, OBJECT, _index).delete(args[1]);
         }
         if (!removed) {
             exitWithError("No reason to remove the file.");
@@ -240,62 +395,117 @@ public class Main {
      *  Starting at the current head commit, display information about
      *  each commit backwards along the commit tree until the initial
      *  commit, following the first parent commit links, ignoring any
-     *  second parents found in merge commits.
-     * @param args Array in format: {'log'}
+     *  second parents found in merge commits. Given a path, only the
+     *  commits that changed it from their first parent are displayed.
+     * @param args Array in format: {'log'} or {'log', '--', path}
      */
     public static void log(String[] args) {
-        Commit commit = _history.getCommit(_branch.getHead());
+        if (args.length == 3) {
+            logPath(args[2].replaceAll("^(\\./)+|/+$", ""));
+            return;
+        }
+        Commit commit = _history.readCommit(_branch.getHead());
         while (commit != null) {
-            System.out.println("===\ncommit " + commit.getCommitSha1());
-            if (commit.isMerged()) {
-                System.out.println("Merge: " + commit.getParent().getId()
-                        + " " + commit.getSecondParent().getId());
-            }
-            System.out.println("Date: "
-                    + commit.getTimeStamps()
-                    + "\n" + commit.getMessage());
-            System.out.println();
+            printCommit(commit);
             commit = commit.getParent();
         }
     }
 
+    /** Help method for log. Display the commits from the current head
+     *  commit back along first parents that changed the file or
+     *  directory PATH. The walk follows the commit graph, and only the
+     *  commits whose changed-path filters might hold PATH are read. */
+    public static void logPath(String path) {
+        CommitGraph graph = CommitGraph.forObjects(OBJECT);
+        ChangedPaths filters = ChangedPaths.forObjects(OBJECT);
+        int position = graph.position(_branch.getHead());
+        while (position != CommitGraph.NONE) {
+            int parent = graph.parent(position);
+            if (filters.mightChange(position, path)) {
+                Commit commit = Commit.fromFile(graph.id(position));
+                String before = parent == CommitGraph.NONE ? null
+                        : TreeNode.lookup(OBJECT, Commit.fromFile(
+                                graph.id(parent)).getFileSha1(), path);
+                String after = TreeNode.lookup(OBJECT,
+                        commit.getFileSha1(), path);
+                if (after == null ? before != null : !after.equals(before)) {
+                    printCommit(commit);
+                }
+            }
+            position = parent;
+        }
+    }
+
+    /** Help method for log. Display the information of COMMIT. */
+    private static void printCommit(Commit commit) {
+        System.out.println("===\ncommit " + commit.getCommitSha1());
+        if (commit.isMerged()) {
+            System.out.println("Merge: "
+                    + commit.getParentId().substring(0, 7) + " "
+                    + commit.getSecondParentId().substring(0, 7));
+        }
+        System.out.println("Date: "
+                + commit.getTimeStamps()
+                + "\n" + commit.getMessage());
+        System.out.println();
+    }
+
 
     /**
-     * Like log, except displays information about all commits ever made.
-     * The order of the commits does not matter.
-     * @param args Array in format: {'global-log'}
+     * Like log, except displays information about all commits ever made,
+     * in the order they were made. With -n, only that many are shown,
+     * and with --offset, the commits before that many are skipped, so
+     * a long history can be paged through. Commits are streamed from
+     * the compact commit log, not read.
+     * @param args Array in format: {'global-log'} followed by any of
+     *             '-n', count and '--offset', start
      */
-    public static void globalLog(String[] args) {
-        for (Commit commit : _history.getCommits().values()) {
-            System.out.println("===\ncommit " + commit.getCommitSha1());
-            if (commit.isMerged()) {
-                System.out.println("Merge: " + commit.getParent().getId()
-                        + " " + commit.getSecondParent().getId());
+    public static void globalLog(String[] args) throws IOException {
+        int count = Integer.MAX_VALUE, offset = 0;
+        try {
+            for (int i = 1; i < args.length; i += 2) {
+                if (args[i].equals("-n")) {
+                    count = Integer.parseInt(args[i + 1]);
+                } else {
+                    offset = Integer.parseInt(args[i + 1]);
+                }
+            }
+        } catch (NumberFormatException excp) {
+            exitWithError("Incorrect operands.");
+        }
+        try (CommitLog.Reader records = _history.log().read(offset)) {
+            for (int i = 0; i < count && records.hasNext(); i += 1) {
+                CommitLog.Record record = records.next();
+                System.out.println("===\ncommit " + record.id);
+                if (record.merged) {
+                    System.out.println("Merge: "
+                            + record.parentId.substring(0, 7) + " "
+                            + record.secondParentId.substring(0, 7));
+                }
+                System.out.println("Date: " + record.timeStamps
+                        + "\n" + record.message);
+                System.out.println();
             }
-            System.out.println("Date: "
-                    + commit.getTimeStamps()
-                    + "\n" + commit.getMessage());
-            System.out.println();
         }
     }
 
 
     /**
-     * Prints out the ids of all commits that have the
-     * given commit message, one per line.
+     * Prints out the ids of all commits whose message contains the
+     * given text, or with --exact, is the given message, one per line.
+     * Candidates are looked up in the term index of the commit log.
      * @param args Array in format: {'find', commitMessage}
+     *             or {'find', '--exact', commitMessage}
      */
-    public static void find(String[] args) {
-        boolean find = false;
-        for (Commit commit : _history.getCommits().values()) {
-            if (commit.getMessage().contains(args[1])) {
-                System.out.println(commit.getCommitSha1());
-                find = true;
-            }
-        }
-        if (!find) {
+    public static void find(String[] args) throws IOException {
+        List<String> ids = _history.log().find(args[args.length - 1],
+                args.length == 3);
+        if (ids.isEmpty()) {
             exitWithError("Found no commit with that message.");
         }
+        for (String id : ids) {
+            System.out.println(id);
+        }
     }
 
     /**
@@ -305,7 +515,7 @@ public class Main {
      * or marked for untracking.
      * @param args Array in format: {'status'}
      */
-    public static void status(String[] args) {
+    public static void status(String[] args) throws IOException {
         System.out.println("=== Branches ===");
         Stack<String> otherBranch = new Stack<>();
         for (String branch : BRANCH.list()) {
@@ -333,38 +543,26 @@ public class Main {
             }
         }
         System.out.println("\n=== Modifications Not Staged For Commit ===");
-        HashSet<String> fileName = new HashSet<>();
-        if (CWD.list() != null) {
-            fileName.addAll(Arrays.asList(CWD.list()));
-        }
+        TreeSet<String> working = new TreeSet<>();
+        expandPath(".", working);
+        HashSet<String> fileName = new HashSet<>(working);
         fileName.addAll(_stagingArea.getTracked().keySet());
         if (_stagingArea.hasTree()) {
             fileName.addAll(_stagingArea.getStagedName());
         }
         for (String file : fileName) {
             if (!Utils.join(CWD, file).exists()
-                    || (Utils.join(CWD, file).exists()
-                    && Utils.join(CWD, file).isFile())
-                    && !Utils.join(CWD, file).getName().startsWith(".")
-                    && !Utils.join(CWD, file).getName().equals("Makefile")
-                    && !Utils.join(CWD, file).getName().endsWith(".iml")) {
-                if (modifyNotStaged(Utils.join(CWD, file)) != null) {
-                    if (modifyNotStaged(Utils.
-                            join(CWD, file)).equals("deleted")) {
-                        System.out.println(file + " (deleted)");
-                    } else if (modifyNotStaged((Utils.
-                            join(CWD, file))).equals("modified")) {
-                        System.out.println(file + " (modified)");
-                    }
+                    || Utils.join(CWD, file).isFile() && !isIgnored(file)) {
+                String modification = modifyNotStaged(file);
+                if (modification != null) {
+                    System.out.println(file + " (" + modification + ")");
                 }
             }
         }
         System.out.println("\n=== Untracked Files ===");
-        if (CWD.list() != null) {
-            for (String name : CWD.list()) {
-                if (isUntracked(name)) {
-                    System.out.println(name);
-                }
+        for (String name : working) {
+            if (isUntracked(name)) {
+                System.out.println(name);
             }
         }
     }
@@ -372,7 +570,7 @@ public class Main {
      * NAME is the untracked file.
      */
     public static boolean isUntracked(String name) {
-        return !_history.getCommit(_branch.getHead()).
+        return !_history.readCommit(_branch.getHead()).
                 getFiles().containsKey(name)
                 && (_stagingArea.allStaged()
                 || (!_stagingArea.allStaged()
@@ -383,36 +581,36 @@ public class Main {
     }
 
     /** Helper method for status. Return the situation
-     * of FILE in which it is modified but not staged. */
-    public static String modifyNotStaged(File file) {
-
+     * of the working file NAME in which it is modified but not staged. */
+    public static String modifyNotStaged(String name) {
+        File file = Utils.join(CWD, name);
         if (!file.exists() && !_stagingArea.allStaged()
                 &&_stagingArea.getStaged().
-                containsKey(file.getName())) {
+                containsKey(name)) {
             return "deleted";
         }
-        if (_history.getCommit(_branch.getHead()).
-                getFiles().containsKey(file.getName())
+        if (_history.readCommit(_branch.getHead()).
+                getFiles().containsKey(name)
                 && !file.exists() && (!_stagingArea.hasTree()
-                || !_stagingArea.getRemoval().contains(file.getName()))) {
+                || !_stagingArea.getRemoval().contains(name))) {
             return "deleted";
         }
         if (file.exists()) {
-            Blob possible = new Blob(file.getName());
+            String possible = _index.sha1(name);
             if ((_stagingArea.allStaged()
                     || (!_stagingArea.allStaged()
-                    && (!_stagingArea.getStagedName().contains(file.getName())
-                    && !_stagingArea.getRemoval().contains(file.getName()))))
-                    && _history.getCommit(_branch.getHead()).
-                    getFiles().containsKey(file.getName())
-                    && !_history.getCommit(_branch.getHead()).
-                    getFiles().get(file.getName()).equals(possible.getSha1())) {
+                    && (!_stagingArea.getStagedName().contains(name)
+                    && !_stagingArea.getRemoval().contains(name))))
+                    && _history.readCommit(_branch.getHead()).
+                    getFiles().containsKey(name)
+                    && !_history.readCommit(_branch.getHead()).
+                    getFiles().get(name).equals(possible)) {
                 return "modified";
             }
             if (!_stagingArea.allStaged() && _stagingArea.
-                    getStaged().containsKey(file.getName())
+                    getStaged().containsKey(name)
                     && !_stagingArea.getStaged().
-                    get(file.getName()).equals(possible.getSha1())) {
+                    get(name).equals(possible)) {
                 return "modified";
             }
         }
@@ -439,30 +637,30 @@ public class Main {
         }
     }
 
+    /** Help method for checkout. Write the blob with SHA1 code into
+     * the working file NAME, and record it in the stat cache. */
+    public static void checkoutFile(String name,
+                                    String sha1) throws IOException {
+        File target = Utils.join(CWD, name);
+        target.getParentFile().mkdirs();
+        Blob.checkout(sha1, target);
+        _index.update(name, sha1);
+    }
+
     /** Help method for checkou situationwith 4 args.
      * @param args Array in formats:
      *              {'checkout', commitId, '--', fileName}
      */
     public static void checkoutArg4(String[] args) throws IOException {
-        boolean find = false;
-        Commit commit = null;
-        for (String id : OBJECT.list()) {
-            if (id.startsWith(args[1])) {
-                find = true;
-                commit = Commit.fromFile(id);
-                break;
-            }
-        }
-        if (!find) {
+        String id = findCommit(args[1]);
+        if (id == null) {
             exitWithError("No commit with that id exists.");
         }
+        Commit commit = Commit.fromFile(id);
         if (!commit.getFiles().containsKey(args[3])) {
             exitWithError("File does not exist in that commit.");
         }
-        Utils.join(CWD, args[3]).createNewFile();
-        Utils.writeContents(Utils.join(CWD, args[3]),
-                Blob.fromFile(commit.
-                        getFiles().get(args[3])));
+        checkoutFile(args[3], commit.getFiles().get(args[3]));
     }
 
     /** Help method for checkout situation with 3 args.
@@ -470,14 +668,12 @@ public class Main {
      *             {'checkout', '--', fileName}
      */
     public static void checkoutArg3(String[] args) throws IOException {
-        if (!_history.getCommit(_branch.getHead()).
+        if (!_history.readCommit(_branch.getHead()).
                 getFiles().containsKey(args[2])) {
             exitWithError("File does not exist in that commit.");
         }
-        Utils.join(CWD, args[2]).createNewFile();
-        Utils.writeContents(Utils.join(CWD, args[2]),
-                Blob.fromFile(_history.getCommit(_branch.getHead()).
-                        getFiles().get(args[2])));
+        checkoutFile(args[2], _history.readCommit(_branch.getHead()).
+                getFiles().get(args[2]));
     }
 
     /** Help method for checkout situation with 2 args.
@@ -490,48 +686,38 @@ public class Main {
         } else if (_branch.getName().equals(branchName)) {
             exitWithError("No need to checkout the current branch.");
         } else {
-            if (CWD.list() != null) {
-                for (String file : CWD.list()) {
-                    if (!file.startsWith(".") && !_stagingArea.getTracked().
-                            containsKey(file) && Commit.fromFile(Branch.
-                            fromFile(branchName).getHead()).hasFile()
-                            && Commit.fromFile(Branch.fromFile(branchName).
-                            getHead()).getFiles().containsKey(file)
-                            && !Blob.fromFile(Commit.fromFile(Branch.
-                            fromFile(branchName).getHead()).getFiles().get(file)).
-                            equals(Utils.readContentsAsString(Utils.
-                                    join(CWD, file)))) {
-                        exitWithError("There is an untracked file "
-                                + "in the way; delete it or add it first.");
-                    }
-                }
-            }
             HashMap<String, String> fileMap =
                     Commit.fromFile(Branch.
                             fromFile(branchName).getHead()).getFiles();
-            if (fileMap != null) {
-                for (String name : fileMap.keySet()) {
-                    Utils.join(CWD, name).createNewFile();
-                    Utils.writeContents(Utils.join(CWD,
-                            name), Blob.fromFile(fileMap.get(name)));
-                }
-            }
-            for (File file : CWD.listFiles()) {
-                if (!file.isHidden() && !file.isDirectory()
-                        && !file.getName().equals("Makefile")
-                        && !file.getName().endsWith(".iml")
-                        && !fileMap.containsKey(file.getName())
-                        && _stagingArea.getTracked() != null
-                        && _stagingArea.getTracked().
-                        containsKey(file.getName())) {
-                    file.delete();
-                }
-            }
+            checkUntracked(fileMap);
+            new Checkout(CWD, OBJECT, _index).apply(workingFiles(), fileMap);
             _branch = Branch.fromFile(branchName);
         }
         _stagingArea.clear();
     }
 
+    /** Help method for checkout, reset, diff and merge-base. Return
+     *  the id of the commit whose id starts with PREFIX, looked up in
+     *  the commit graph, or null if there is none. Exits with an error
+     *  listing the candidates if there are several. */
+    public static String findCommit(String prefix) {
+        List<String> ids = CommitGraph.forObjects(OBJECT).
+                matches(prefix, AMBIGUOUS_SHOWN + 1);
+        if (ids.size() > 1) {
+            StringBuilder message = new StringBuilder(
+                    "Commit id " + prefix + " is ambiguous; candidates:");
+            for (String id : ids.subList(0,
+                    Math.min(ids.size(), AMBIGUOUS_SHOWN))) {
+                message.append("\n  ").append(id);
+            }
+            if (ids.size() > AMBIGUOUS_SHOWN) {
+                message.append("\n  ...");
+            }
+            exitWithError(message.toString());
+        }
+        return ids.isEmpty() ? null : ids.get(0);
+    }
+
     /**
      * Creates a new branch with the given name, and
      * points it at the current head node.
@@ -583,45 +769,15 @@ public class Main {
      * @param args Array in format: {'reset', commitId}
      */
     public static void reset(String[] args) throws IOException {
-        boolean find = false;
+        String id = findCommit(args[1]);
         Commit commit = null;
-        for (String id : OBJECT.list()) {
-            if (id.startsWith(args[1])) {
-                find = true;
-                commit = Commit.fromFile(id);
-                break;
-            }
-        }
-        if (!find) {
+        if (id == null) {
             exitWithError("No commit with that id exists.");
         } else {
-            if (CWD.list() != null) {
-                for (String file : CWD.list()) {
-                    if (!file.startsWith(".") && !_stagingArea.
-                            getTracked().
-                            containsKey(file) && commit.hasFile()
-                            && commit.
-                            getFiles().containsKey(file)
-                            && !Blob.fromFile(commit.getFiles().
-                            get(file)).equals(Utils.readContentsAsString(Utils.
-                            join(CWD, file)))) {
-                        exitWithError("There is an untracked file "
-                                + "in the way; delete it or add it first.");
-                    }
-                }
-                for (File file : CWD.listFiles()) {
-                    if (!file.isHidden()
-                            && !file.getName().equals("Makefile")
-                            && !file.getName().endsWith(".iml")) {
-                        file.delete();
-                    }
-                }
-            }
-            HashMap<String, String> fileMap = commit.getFiles();
-            for (String name : fileMap.keySet()) {
-                Utils.writeContents(Utils.join(CWD, name),
-                        Blob.fromFile(fileMap.get(name)));
-            }
+            commit = Commit.fromFile(id);
+            checkUntracked(commit.getFiles());
+            new Checkout(CWD, OBJECT, _index).apply(workingFiles(),
+                    commit.getFiles());
         }
         _stagingArea.clear();
         _branch.addCommit(commit.getCommitSha1());
@@ -631,10 +787,14 @@ public class Main {
 
     /**
      * Merges files from the given branch into the current branch.
+     * With --no-checkout, the merge is committed without touching the
+     * working directory, and conflicting files are listed instead.
      * @param args Array in format: {'merge', branchName}
+     *             or {'merge', '--no-checkout', branchName}
      */
     public static void merge(String[] args) throws IOException {
-        String branchName = args[1].replace("/", "-");
+        boolean noCheckout = args.length == 3;
+        String branchName = args[args.length - 1].replace("/", "-");
         if (_stagingArea.hasTree()) {
             exitWithError("You have uncommitted changes.");
         } else if (!Arrays.asList(BRANCH.list()).contains(branchName)) {
@@ -643,35 +803,34 @@ public class Main {
             exitWithError("Cannot merge a branch with itself");
         } else {
             Branch mergeBranch = Branch.fromFile(branchName);
-            if (Commit.fromFile(mergeBranch.getHead()).hasFile()) {
-                for (String file : Commit.fromFile(mergeBranch.
-                        getHead()).getFiles().keySet()) {
-                    if (!file.startsWith(".") && !_stagingArea.
-                            getTracked().containsKey(file)
-                            && Utils.join(CWD, file).exists()
-                            && !Blob.fromFile(Commit.fromFile(
-                                    mergeBranch.getHead()).getFiles().
-                            get(file)).equals(Utils.
-                            readContentsAsString(Utils.join(CWD, file)))) {
-                        exitWithError("There is an untracked "
-                                + "file in the way; delete "
-                                + "it or add it first.");
-                    }
-                }
+            if (!noCheckout) {
+                checkUntracked(
+                        Commit.fromFile(mergeBranch.getHead()).getFiles());
             }
             String splitPoint = findSplitPoint(mergeBranch);
             if (_branch.getHead().equals(splitPoint)) {
+                if (!noCheckout) {
+                    update(Commit.fromFile(mergeBranch.getHead()));
+                }
                 _branch.copy(mergeBranch);
                 saveCurrentBranch();
                 _stagingArea.copy(Stage.fromFile(mergeBranch.getName()));
                 _stagingArea.saveStage();
-                update(Commit.fromFile(mergeBranch.getHead()));
                 exitWithError("Current branch fast-forwarded.");
             } else if (mergeBranch.getHead().equals(splitPoint)) {
                 exitWithError("Given branch is an "
                         + "ancestor of the current branch.");
-            } else if (doMerge(branchName, splitPoint)) {
-                System.out.println("Encountered a merge conflict.");
+            } else {
+                MergeTree merge = doMerge(branchName, splitPoint,
+                        noCheckout);
+                if (merge.hasConflicts()) {
+                    System.out.println("Encountered a merge conflict.");
+                    if (noCheckout) {
+                        for (String name : merge.conflicts()) {
+                            System.out.println(name);
+                        }
+                    }
+                }
             }
         }
     }
@@ -681,232 +840,109 @@ public class Main {
      * @return The sha1 code of split point commit.
      */
     public static String findSplitPoint(Branch mergeBranch) {
-        String splitPoint = _branch.getCommits().getFirst();
-        int minDistance = Integer.MAX_VALUE;
-        int index = 1;
-        while (index < Math.min(_branch.size(), mergeBranch.size())) {
-            if (mergeBranch.getCommit(index).
-                    equals(_branch.getCommit(index))) {
-                splitPoint =  _branch.getCommit(index);
-            } else {
-                int currentCommitDistance, mergeCommitDistance;
-                if (Commit.fromFile(mergeBranch.getHead()).isAncestor(
-                        _branch.getCommit(index))) {
-                    currentCommitDistance = distance(_branch.
-                            getCommit(index), _branch.getHead(),mergeBranch);
-                    if (currentCommitDistance < minDistance) {
-                        splitPoint = _branch.getCommit(index);
-                        minDistance = currentCommitDistance;
-                    }
-                }
-                if (Commit.fromFile(_branch.getHead()).isAncestor(
-                        mergeBranch.getCommit(index))) {
-                    mergeCommitDistance = distance(mergeBranch.
-                            getCommit(index), _branch.getHead(),mergeBranch);
-                    if (mergeCommitDistance < minDistance) {
-                        splitPoint = mergeBranch
-                                .getCommit(index);
-                        minDistance = mergeCommitDistance;
-                    }
-                }
-            }
-            index++;
-        }
-        return splitPoint;
+        return CommitGraph.forObjects(OBJECT).
+                mergeBase(_branch.getHead(), mergeBranch.getHead());
     }
+
     /** Help method for merge. Update files in the current working
-     * directory according to the COMMIT.
+     * directory according to the COMMIT, touching only the files
+     * that differ.
      */
     public static void update(Commit commit) throws IOException {
-        for (File file : CWD.listFiles()) {
-            if (!file.isHidden()
-                    && !file.getName().equals("Makefile")
-                    && !file.getName().endsWith(".iml")) {
-                file.delete();
+        new Checkout(CWD, OBJECT, _index).apply(workingFiles(),
+                commit.getFiles());
+    }
+
+    /** Help method for checkout, reset and merge. Exit with an error if
+     *  a working file that is not tracked would be overwritten by
+     *  checking out FILES, which may lie in any directory. */
+    public static void checkUntracked(HashMap<String, String> files) {
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            String name = file.getKey();
+            if (!name.startsWith(".") && !_stagingArea.getTracked().
+                    containsKey(name) && Utils.join(CWD, name).isFile()
+                    && !file.getValue().equals(_index.sha1(name))) {
+                exitWithError("There is an untracked file "
+                        + "in the way; delete it or add it first.");
             }
         }
-        for (String fileName : commit.getFiles().keySet()) {
-            Utils.join(CWD, fileName).createNewFile();
-            Utils.writeContents(Utils.join(CWD, fileName),
-                    Blob.fromFile(commit.getFiles().get(fileName)));
-        }
     }
 
-
-    /** Help method for merge. Return the distance
-     * from commit FROM to TO, with MERGEBRANCH */
-    public static int distance(String from, String to, Branch mergeBranch) {
-        if (_branch.contains(to)) {
-            if (_branch.contains(from)) {
-                if (_branch.getCommits().indexOf(to)
-                        < _branch.getCommits().indexOf(from)) {
-                    return _branch.size() + mergeBranch.size();
-                } else {
-                    return _branch.getCommits().indexOf(to)
-                            - _branch.getCommits().indexOf(from);
-                }
-            } else  {
-                if (Commit.fromFile(to).getSecondParent()!= null) {
-                    return 1 + distance(from,
-                            Commit.fromFile(to).getSecondParent().
-                                    getCommitSha1(), mergeBranch);
-                } else {
-                    return 1 + distance(from,
-                            Commit.fromFile(to).getParent().
-                                    getCommitSha1(), mergeBranch);
-                }
-            }
-        } else  {
-            if (mergeBranch.contains(from)) {
-                if (mergeBranch.getCommits().indexOf(to)
-                        < mergeBranch.getCommits().indexOf(from)) {
-                    return _branch.size() + mergeBranch.size();
-                } else {
-                    return mergeBranch.getCommits().indexOf(to)
-                            - mergeBranch.getCommits().indexOf(from);
-                }
-            } else  {
-                if (Commit.fromFile(to).getSecondParent()!= null) {
-                    return 1 + distance(from,
-                            Commit.fromFile(to).getSecondParent().
-                                    getCommitSha1(), mergeBranch);
-                } else {
-                    return 1 + distance(from,
-                            Commit.fromFile(to).getParent().
-                                    getCommitSha1(), mergeBranch);
-                }
-            }
+    /** Help method for checkout, reset and merge. Return the files the
+     *  working directory is known to hold: those of the head commit,
+     *  overlaid with those tracked and staged since. */
+    public static HashMap<String, String> workingFiles() {
+        HashMap<String, String> files = new HashMap<>();
+        if (!_history.isEmpty()) {
+            files.putAll(_history.readCommit(_branch.getHead()).getFiles());
+        }
+        files.putAll(_stagingArea.getTracked());
+        if (_stagingArea.hasTree()) {
+            files.putAll(_stagingArea.getStaged());
         }
+        return files;
     }
 
 
-    /** Help method for merge, distinguish merge
-     * situation from GIVENBRANCH and SPLITPOINT.
-     * @return Conflict situation.*/
-    public static boolean doMerge(String givenBranch,
-                               String splitPoint) throws IOException {
+    /** Help method for merge. Merge GIVENBRANCH into the current
+     * branch from SPLITPOINT in memory, commit the result and, unless
+     * NOCHECKOUT, bring the working directory to it in one pass.
+     * @return The merge, with its conflicts.*/
+    public static MergeTree doMerge(String givenBranch, String splitPoint,
+                                    boolean noCheckout) throws IOException {
         Branch mergeBranch = Branch.fromFile(givenBranch);
-        HashMap<String, String> mergeFileMap
-                = Commit.fromFile(mergeBranch.getHead()).getFiles();
-        HashMap<String, String> splitPointFileMap
-                = Commit.fromFile(splitPoint).getFiles();
         HashMap<String, String> currentFileMap
                 = Commit.fromFile(_branch.getHead()).getFiles();
-        HashSet<String> allFileName = new HashSet<>(mergeFileMap.keySet());
-        allFileName.addAll(splitPointFileMap.keySet());
-        allFileName.addAll(currentFileMap.keySet());
-        boolean conflict = false;
-        for (String fileName : allFileName) {
-            if (!splitPointFileMap.containsKey(fileName)) {
-                if (!currentFileMap.containsKey(fileName)
-                        && mergeFileMap.containsKey(fileName)) {
-                    checkout(new String[]{"checkout",
-                            mergeBranch.getHead(), "--", fileName});
-                    _stagingArea.add(new Blob(fileName));
-                }
-                if (currentFileMap.containsKey(fileName)
-                        && mergeFileMap.containsKey(fileName)
-                        && !currentFileMap.get(fileName).
-                        equals(mergeFileMap.get(fileName))) {
-                    String content = "<<<<<<< HEAD" + System.lineSeparator()
-                            + Blob.fromFile(currentFileMap.get(fileName))
-                            + "=======" + System.lineSeparator()
-                            + Blob.fromFile(mergeFileMap.
-                            get(fileName)) + ">>>>>>>";
-                    Utils.writeContents(Utils.join(CWD, fileName), content);
-                    conflict = true;
-                }
-            } else {
-                conflict = mergeSplitExist(mergeFileMap,
-                        splitPointFileMap, currentFileMap,
-                        fileName, conflict);
-            }
-        }
-        _stagingArea.commit();
-        Commit tracked = new Commit(_stagingArea.
-                getTree(), "Merged " + givenBranch.replace("-", "/")
-                + " into " + _branch.getName().replace("-", "/") + ".");
+        MergeTree merge = new MergeTree(OBJECT).merge(
+                Commit.fromFile(splitPoint).getFiles(), currentFileMap,
+                Commit.fromFile(mergeBranch.getHead()).getFiles());
+        Tree tree = new Tree();
+        tree.setTracked(merge.result());
+        tree.commit();
+        Commit tracked = new Commit(tree, "Merged "
+                + givenBranch.replace("-", "/") + " into "
+                + _branch.getName().replace("-", "/") + ".");
         tracked.merge();
         tracked.setParent(Commit.fromFile(_branch.getHead()));
         tracked.setSecondParent(Commit.fromFile(mergeBranch.getHead()));
-        tracked.addAncestors(_branch.getCommits());
-        tracked.addAncestor(Commit.fromFile(mergeBranch.getHead()).getCommitSha1());
-        tracked.addAncestors(Commit.fromFile(mergeBranch.getHead()).getAncestors());
         _history.addCommit(tracked);
+        if (!noCheckout) {
+            new Checkout(CWD, OBJECT, _index).apply(workingFiles(),
+                    tracked.getFiles());
+        }
         _branch.addCommit(tracked.getCommitSha1());
+        _stagingArea.setTracked(tracked.getFiles(), tracked.getFileSha1());
         _stagingArea.clear();
-        for (File file : CWD.listFiles()) {
-            if (tracked.getFiles() != null && !tracked.
-                    getFiles().containsKey(file.getName())
-                    && !file.isHidden() && !file.isDirectory()
-                    && !file.getName().equals("Makefile")
-                    && !file.getName().endsWith(".iml")) {
-                file.delete();
-            }
-        }
-        return conflict;
+        return merge;
     }
 
-    /** Help method for merge. This part is the situation when
-     * split point map contains the FILENAME. Get data from
-     * MERGEFILEMAP, SPLITPOINTFILEMAP, CURRENTFILEMAP, former conflic
-     * situation CONFLICT
-     * @return Conflict situation. True when file merging face conflict.
+    /**
+     * Prints out the id of the best common ancestor of two
+     * branches or commits, the split point merge would use.
+     * @param args Array in format: {'merge-base', first, second}
      */
-    public static boolean mergeSplitExist(
-            HashMap<String, String> mergeFileMap,
-            HashMap<String, String> splitPointFileMap,
-            HashMap<String, String> currentFileMap,
-            String fileName, boolean conflict
-    ) throws IOException {
-        if (mergeFileMap.containsKey(fileName)
-                && currentFileMap.containsKey(fileName)
-                && !splitPointFileMap.get(fileName).
-                equals(mergeFileMap.get(fileName))
-                && splitPointFileMap.get(fileName).
-                equals(currentFileMap.get(fileName))) {
-            Utils.writeContents(Utils.join(CWD,
-                    fileName), Blob.fromFile(
-                    mergeFileMap.get(fileName)));
-            _stagingArea.add(new Blob(fileName));
-        } else if (!mergeFileMap.containsKey(fileName)
-                && currentFileMap.containsKey(fileName)
-                && splitPointFileMap.get(fileName).
-                equals(currentFileMap.get(fileName))) {
-            rm(new String[]{"rm", fileName});
-        } else if ((currentFileMap.containsKey(fileName)
-                && mergeFileMap.containsKey(fileName)
-                && !currentFileMap.get(fileName).
-                equals(mergeFileMap.get(fileName))
-                && !currentFileMap.get(fileName).
-                equals(splitPointFileMap.get(fileName))
-                && !mergeFileMap.get(fileName).
-                equals(splitPointFileMap.get(fileName)))
-                || (!currentFileMap.containsKey(fileName)
-                && mergeFileMap.containsKey(fileName)
-                && !mergeFileMap.get(fileName).
-                equals(splitPointFileMap.get(fileName)))
-                || (currentFileMap.containsKey(fileName)
-                && !mergeFileMap.containsKey(fileName)
-                && !currentFileMap.get(fileName).
-                equals(splitPointFileMap.get(fileName)))) {
-            String current = currentFileMap.containsKey(fileName)
-                    ? System.lineSeparator()
-                    + Blob.fromFile(currentFileMap.get(fileName))
-                    : System.lineSeparator();
-            String merge = mergeFileMap.containsKey(fileName)
-                    ? System.lineSeparator()
-                    + Blob.fromFile(mergeFileMap.get(fileName))
-                    : System.lineSeparator();
-            String content = "<<<<<<< HEAD"
-                    + current + "======="
-                    + merge + ">>>>>>>";
-            Utils.join(CWD, fileName).createNewFile();
-            Utils.writeContents(Utils.join(CWD, fileName), content);
-            _stagingArea.add(new Blob(fileName));
-            return true;
-        }
-        return conflict;
+    public static void mergeBase(String[] args) {
+        String first = resolveCommit(args[1]);
+        String second = resolveCommit(args[2]);
+        if (first == null || second == null) {
+            exitWithError("No commit with that id exists.");
+        }
+        String base = CommitGraph.forObjects(OBJECT).mergeBase(first, second);
+        if (base == null) {
+            exitWithError("No common ancestor found.");
+        }
+        System.out.println(base);
+    }
+
+    /** Help method for merge-base. Return the id of the head of branch
+     *  NAME, or else of the commit whose id starts with NAME,
+     *  or null if there is neither. */
+    public static String resolveCommit(String name) {
+        String branchName = name.replace("/", "-");
+        if (Utils.join(BRANCH, branchName).exists()) {
+            return Branch.fromFile(branchName).getHead();
+        }
+        return findCommit(name);
     }
 
     /** Help method for merge. Save all tracked files
@@ -946,6 +982,7 @@ public class Main {
         } else {
             Utils.join(REMOTE, args[1]).delete();
             Utils.join(HISTORY, args[1]).delete();
+            new CommitLog(Utils.join(HISTORY, args[1])).delete();
             for (File file : STAGE.listFiles()) {
                 if (file.getName().contains(args[1] + "-")) {
                     file.delete();
@@ -961,48 +998,48 @@ public class Main {
      */
     public static void push(String[] args) throws IOException {
         Remote  remote = Remote.fromFile(args[1]);
-        if (!remote.getRepo().exists()) {
+        if (remote.isBundle()) {
+            pushBundle(remote.getRepo(), args[2]);
+        } else if (!remote.getRepo().exists()) {
             exitWithError("Remote directory not found.");
         } else {
-            HashMap<String, String> fileMap = new HashMap<>();
             Commit pushCommit = Commit.fromFile(_branch.getHead());
             History history = remote.historyFromFile();
             Branch branch;
-            for (String name : pushCommit.getFiles().keySet()) {
-                fileMap.put(name, Blob.fromFile(pushCommit.getFiles().get(name)));
-            }
             if (!Utils.join(remote.getBranch(), args[2]).exists()) {
                 branch = new Branch(args[2], _branch.getHead());
                 Utils.join(remote.getBranch(), args[2]).createNewFile();
             } else {
                 branch = remote.branchFromFile(args[2]);
-                if (_history.getCommit(branch.getHead()) == null) {
+                if (!includes(_branch.getHead(), branch.getHead())) {
                     exitWithError("Please pull "
                             + "down remote changes before pushing.");
                 }
             }
             branch.addCommit(pushCommit.getCommitSha1());
-            Utils.join(remote.getObject(), pushCommit.getCommitSha1()).createNewFile();
-            Utils.writeObject(Utils.join(remote.getObject(), pushCommit.getCommitSha1()), pushCommit);
-            remote.reset(fileMap);
-            history.addCommit(pushCommit);
-            Utils.writeObject(Utils.join(remote.getBranch(), args[2]), branch);
-            Utils.writeObject(Utils.join(remote.getHistory(), "current"), history);
+            Transfer transfer = new Transfer(OBJECT, remote.getObject());
+            transfer.want(pushCommit.getCommitSha1());
+            transfer.send(history);
+            remote.reset(pushCommit.getFiles());
+            branch.saveBranch(Utils.join(remote.getBranch(), args[2]));
         }
     }
 
+    /** Help method for push. Return true if the commit with id HEAD is
+     *  the commit with id REMOTEHEAD or descends from it, so that
+     *  pushing HEAD in its place loses no commits. */
+    private static boolean includes(String head, String remoteHead) {
+        return remoteHead.isEmpty() || remoteHead.equals(head)
+                || CommitGraph.forObjects(OBJECT)
+                .isAncestor(remoteHead, head);
+    }
 
-    /** Help method for fetch. Save COMMIT in cwd. */
+    /** Help method for fetch. Save COMMIT in cwd, with the commits
+     *  before it and the objects they use that cwd lacks. */
     public static void saveCommit(Commit commit, Remote remote) throws IOException {
-        Utils.writeObject(Utils.join(OBJECT, commit.getCommitSha1()), commit);
-        Utils.writeObject(Utils.join(OBJECT,
-                commit.getTree().getSha1()), commit.getTree());
-        for (String fileName : commit.getTree().getTracked().keySet()) {
-            String sha1 = commit.getTree().getTracked().get(fileName);
-            String content = remote.blobFromFile(sha1);
-            Utils.join(OBJECT, sha1).createNewFile();
-            Utils.writeContents(Utils.join(OBJECT, sha1), content);
-        }
+        Transfer transfer = new Transfer(remote.getObject(), OBJECT);
+        transfer.want(commit.getCommitSha1());
+        transfer.send(null);
     }
 
     /**
@@ -1015,6 +1052,8 @@ public class Main {
         Remote remote = Remote.fromFile(args[1]);
         if (!remote.getRepo().exists()) {
             exitWithError("Remote directory not found.");
+        } else if (remote.isBundle()) {
+            fetchBundle(remote.getRepo(), args[1], args[2]);
         } else if (!Utils.join(remote.getBranch(), args[2]).exists()) {
             exitWithError("That remote does not have that branch.");
         } else {
@@ -1024,13 +1063,98 @@ public class Main {
             Commit commit = remote.commitFromFile(branch.getHead());
             saveCommit(commit, remote);
             Stage stage = remote.stageFromFile(args[2]);
-            Utils.join(STAGE, args[1] + "-" + args[2]).createNewFile();
-            Utils.writeObject(Utils.join(STAGE, args[1] + "-" + args[2]), stage);
+            stage.saveStage(Utils.join(STAGE, args[1] + "-" + args[2]));
             History history = remote.historyFromFile();
             history.saveHistory(args[1]);
         }
     }
 
+    /** Help method for push. Write into the bundle FILE the current
+     *  branch as BRANCHNAME, with all its history, unless FILE holds a
+     *  branch of that name this repository does not have. The other
+     *  branches FILE holds are kept, their objects first copied into
+     *  this repository so the bundle can be written from it. */
+    public static void pushBundle(File file,
+                                  String branchName) throws IOException {
+        LinkedHashMap<String, String> tips = new LinkedHashMap<>();
+        if (file.exists()) {
+            Bundle bundle = openBundle(file);
+            String head = bundle.tips().get(branchName);
+            if (head != null && !includes(_branch.getHead(), head)) {
+                exitWithError("Please pull "
+                        + "down remote changes before pushing.");
+            }
+            bundle.unbundle(OBJECT);
+            tips.putAll(bundle.tips());
+        }
+        tips.put(branchName, _branch.getHead());
+        Bundle.create(file, OBJECT, tips);
+    }
+
+    /** Help method for fetch. Bring down the branch BRANCHNAME of the
+     *  bundle FILE, added as remote REMOTENAME, with its history. */
+    public static void fetchBundle(File file, String remoteName,
+                                   String branchName) throws IOException {
+        Bundle bundle = openBundle(file);
+        String head = bundle.tips().get(branchName);
+        if (head == null) {
+            exitWithError("That remote does not have that branch.");
+        }
+        bundle.unbundle(OBJECT);
+        Branch branch = new Branch(remoteName, branchName, head);
+        branch.addCommits(new LinkedList<>(bundle.commits()));
+        Stage stage = new Stage(branch.getName());
+        Commit commit = Commit.fromFile(head);
+        stage.setTracked(commit.getFiles(), commit.getFileSha1());
+        stage.saveStage();
+        StringBuilder ids = new StringBuilder();
+        for (String id : bundle.commits()) {
+            ids.append(id).append("\n");
+        }
+        Utils.writeContents(Utils.join(HISTORY, remoteName), ids.toString());
+    }
+
+    /** Help method for bundle, fetch and push. Return the bundle in
+     *  FILE, exiting if it is corrupt. */
+    public static Bundle openBundle(File file) throws IOException {
+        try {
+            return Bundle.open(file);
+        } catch (IllegalArgumentException excp) {
+            exitWithError(excp.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes or reads a bundle: a single file holding a branch and all
+     * its history, which fetch and push can also use in place of a
+     * remote repository.
+     * @param args Array in format: {'bundle', 'create', file, [branch]}
+     *             or {'bundle', 'unbundle', file}
+     */
+    public static void bundle(String[] args) throws IOException {
+        File file = new File(args[2]);
+        if (args[1].equals("create")) {
+            String branchName = args.length == 4
+                    ? args[3].replace("/", "-") : _branch.getName();
+            if (!Utils.join(BRANCH, branchName).exists()) {
+                exitWithError("No such branch exists.");
+            }
+            HashMap<String, String> tips = new HashMap<>();
+            tips.put(branchName, Branch.fromFile(branchName).getHead());
+            Bundle.create(file, OBJECT, tips);
+        } else {
+            if (!file.isFile()) {
+                exitWithError("Bundle file not found.");
+            }
+            Bundle bundle = openBundle(file);
+            bundle.unbundle(OBJECT);
+            for (Map.Entry<String, String> tip : bundle.tips().entrySet()) {
+                System.out.println(tip.getValue() + " " + tip.getKey());
+            }
+        }
+    }
+
     /**
      * Fetches branch remoteName/remoteBranchName
      * as for the fetch command, and then merges
@@ -1042,6 +1166,177 @@ public class Main {
         merge(new String[]{"merge", args[1] + "/" + args[2]});
     }
 
+    /**
+     * Deletes the objects no commit, branch or staging area uses.
+     * Every branch head, including remote-tracking ones, and every
+     * commit in the history is marked from, since global-log, find and
+     * checkout can still reach any commit ever made; so are the files
+     * staged on every branch. Unmarked objects younger than the grace
+     * period are kept, unless --now is given.
+     * @param args Array in format: {'gc'} or {'gc', '--now'}
+     */
+    public static void gc(String[] args) throws IOException {
+        long start = System.nanoTime();
+        GarbageCollector collector = new GarbageCollector(OBJECT);
+        LinkedHashSet<String> heads = new LinkedHashSet<>();
+        heads.add(_branch.getHead());
+        for (String name : BRANCH.list()) {
+            if (!name.equals(_branch.getName())) {
+                heads.add(Branch.fromFile(name).getHead());
+            }
+        }
+        heads.addAll(_history.getCommitIds());
+        collector.markCommits(heads);
+        for (String name : STAGE.list()) {
+            Stage stage = name.equals(_branch.getName())
+                    ? _stagingArea : Stage.fromFile(name);
+            stage.getTracked().values().forEach(collector::markBlob);
+            if (stage.hasTree()) {
+                stage.getStaged().values().forEach(collector::markBlob);
+            }
+        }
+        collector.sweep(args.length == 2 ? 0 : GarbageCollector.GRACE);
+        System.out.println("Removed " + collector.removed()
+                + " objects, reclaimed " + collector.reclaimed()
+                + " bytes in " + (System.nanoTime() - start) / 1000000
+                + " ms.");
+    }
+
+    /**
+     * Checks the integrity of the repository: that every object, loose,
+     * packed or chunked, still hashes to its id, that every commit in
+     * the history has its tree, blobs and parents, and that every
+     * branch head exists. Prints each problem found.
+     * @param args Array in format: {'fsck'}
+     */
+    public static void fsck(String[] args) {
+        IntegrityCheck check = new IntegrityCheck(OBJECT);
+        int objects = check.verifyObjects();
+        TreeMap<String, String> heads = new TreeMap<>();
+        for (String name : BRANCH.list()) {
+            try {
+                heads.put(name, name.equals(_branch.getName())
+                        ? _branch.getHead()
+                        : Branch.fromFile(name).getHead());
+            } catch (IllegalArgumentException excp) {
+                heads.put(name, null);
+            }
+        }
+        check.verifyCommits(heads, _history.getCommitIds());
+        List<String> problems = check.problems();
+        for (String problem : problems) {
+            System.out.println(problem);
+        }
+        System.out.println("Checked " + objects + " objects, found "
+                + problems.size() + " problems.");
+    }
+
+    /**
+     * Folds all loose objects into a single pack, storing objects
+     * similar to one another as deltas.
+     * @param args Array in format: {'repack'}
+     */
+    public static void repack(String[] args) throws IOException {
+        int packed = Pack.repack(OBJECT, PACK);
+        System.out.println("Packed " + packed + " objects.");
+    }
+
+    /**
+     * Shows, line by line, how the files of the working directory differ
+     * from those staged, how those staged differ from the head commit,
+     * or how the files of the working directory differ from a commit.
+     * Only tracked files are compared.
+     * @param args Array in one of following formats:
+     *             {'diff'}
+     *             {'diff', '--staged'}
+     *             {'diff', commitId}
+     */
+    public static void diff(String[] args) {
+        HashMap<String, String> from, to;
+        boolean working = true;
+        if (args.length == 1) {
+            from = stagedFiles();
+        } else if (args[1].equals("--staged")) {
+            from = _history.readCommit(_branch.getHead()).getFiles();
+            working = false;
+        } else {
+            String id = resolveCommit(args[1]);
+            if (id == null) {
+                exitWithError("No commit with that id exists.");
+            }
+            from = Commit.fromFile(id).getFiles();
+        }
+        to = stagedFiles();
+        if (working) {
+            HashMap<String, String> onDisk = new HashMap<>();
+            for (String name : to.keySet()) {
+                String sha1 = _index.sha1(name);
+                if (sha1 != null) {
+                    onDisk.put(name, sha1);
+                }
+            }
+            to = onDisk;
+        }
+        Set<String> names = new TreeSet<>(from.keySet());
+        names.addAll(to.keySet());
+        for (String name : names) {
+            String a = from.get(name), b = to.get(name);
+            if (a != null && a.equals(b)) {
+                continue;
+            }
+            byte[] before = a == null ? new byte[0] : Blob.fromFile(a);
+            byte[] after = b == null ? new byte[0]
+                    : working ? Utils.readContents(Utils.join(CWD, name))
+                    : Blob.fromFile(b);
+            System.out.println("diff --git a/" + name + " b/" + name);
+            new Diff(before, after).format(System.out,
+                    a == null ? null : name, b == null ? null : name);
+        }
+    }
+
+    /**
+     * Displays each line of a file as of the current head commit, after
+     * the abbreviated id of the commit that last changed it and its line
+     * number.
+     * @param args Array in format: {'blame', fileName}
+     */
+    public static void blame(String[] args) throws IOException {
+        String path = args[1].replaceAll("^(\\./)+|/+$", "");
+        String head = _branch.getHead();
+        String blob = TreeNode.lookupFile(OBJECT,
+                _history.readCommit(head).getFileSha1(), path);
+        if (blob == null) {
+            exitWithError("File does not exist in that commit.");
+        }
+        Diff.Lines lines = new Diff.Lines(Blob.fromFile(blob));
+        if (lines.isBinary()) {
+            exitWithError("Cannot blame a binary file.");
+        }
+        String[] owners = new Blame(OBJECT).blame(head, path);
+        String format = "%s %" + String.valueOf(lines.size()).length()
+                + "d) %s%n";
+        for (int i = 0; i < lines.size(); i += 1) {
+            int length = lines.length(i)
+                    - (lines.endsWithNewline(i) ? 1 : 0);
+            System.out.printf(format, owners[i].substring(0, 7), i + 1,
+                    new String(lines.data(), lines.start(i), length,
+                            StandardCharsets.UTF_8));
+        }
+    }
+
+    /** Help method for diff. Return the files as staged for the next
+     *  commit: those of the head commit, less those marked for removal,
+     *  overlaid with those staged. */
+    public static HashMap<String, String> stagedFiles() {
+        HashMap<String, String> files = new HashMap<>(
+                _history.readCommit(_branch.getHead()).getFiles());
+        if (_stagingArea.hasTree()) {
+            files.keySet().removeAll(_stagingArea.getRemoval());
+            files.putAll(_stagingArea.getStaged());
+        }
+        return files;
+    }
+
     /**
      * Checks whether the arguments of corresponding
      * command have correct format,
@@ -1056,10 +1351,14 @@ public class Main {
         case "commit":
             match = args.length == 1 || args.length == 2;
             break;
-        case "init":
         case "log":
-        case "global-log":
+            match = args.length == 1
+                    || args.length == 3 && args[1].equals("--");
+            break;
+        case "init":
         case "status":
+        case "repack":
+        case "fsck":
             match = args.length == 1;
             break;
         case "checkout":
@@ -1067,14 +1366,45 @@ public class Main {
                     || (args.length == 3 && args[1].equals("--"))
                     || (args.length == 4 && args[2].equals("--"));
             break;
+        case "add":
+            match = args.length >= 2;
+            break;
         case "add-remote":
-            match = args.length == 3 && args[2].matches(".+/\\.gitlet");
+            match = args.length == 3 && (args[2].matches(".+/\\.gitlet")
+                    || args[2].endsWith(".bundle"));
             break;
         case "push":
         case "fetch":
         case "pull":
+        case "merge-base":
             match = args.length == 3;
             break;
+        case "diff":
+            match = args.length == 1 || args.length == 2;
+            break;
+        case "global-log":
+            match = args.length % 2 == 1;
+            for (int i = 1; match && i < args.length; i += 2) {
+                match = args[i].equals("-n") || args[i].equals("--offset");
+            }
+            break;
+        case "find":
+            match = args.length == 2
+                    || args.length == 3 && args[1].equals("--exact");
+            break;
+        case "gc":
+            match = args.length == 1
+                    || args.length == 2 && args[1].equals("--now");
+            break;
+        case "merge":
+            match = args.length == 2
+                    || args.length == 3 && args[1].equals("--no-checkout");
+            break;
+        case "bundle":
+            match = args.length == 3 && args[1].equals("unbundle")
+                    || (args.length == 3 || args.length == 4)
+                    && args[1].equals("create");
+            break;
         default:
             match = args.length == 2;
         }
@@ -1087,8 +1417,10 @@ public class Main {
     private static Stage _stagingArea;
     /** The commit history of CWD. */
     private static History _history = new History();
-    /** All branches. */
-    private static HashMap<String, Branch> _branches = new HashMap<>();
     /** Current branche. */
     private static Branch _branch;
+    /** The stat cache of the working directory. */
+    private static Index _index;
+    /** True if commands run inside a daemon, which must not exit. */
+    static boolean _resident;
 }
@@ -0,0 +1,107 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/** Merge of two file maps changed from a common base, done entirely in
+ *  memory. Each file map maps names to blob ids. A file changed on one
+ *  side only takes that side's version; a file changed on both sides is
+ *  merged line by line and its result, conflict markers and all, saved
+ *  as a new blob, unless one of its versions is binary, when it
+ *  conflicts and keeps the current side's version. Nothing in the
+ *  working directory is read or written, so the result can be
+ *  committed before, or without, checking it out.
+ *  @author Huixuan Lin
+ */
+public class MergeTree {
+
+    /** Constructor of a merge of blobs in object directory OBJECTDIR. */
+    public MergeTree(File objectDir) {
+        _objectDir = objectDir;
+    }
+
+    /** Merge the files of OURS and THEIRS, both changed from BASE.
+     *  @return this merge */
+    public MergeTree merge(Map<String, String> base,
+                           Map<String, String> ours,
+                           Map<String, String> theirs) throws IOException {
+        Set<String> names = new HashSet<>(base.keySet());
+        names.addAll(ours.keySet());
+        names.addAll(theirs.keySet());
+        for (String name : names) {
+            String result = mergeFile(name, base.get(name), ours.get(name),
+                    theirs.get(name));
+            if (result != null) {
+                _result.put(name, result);
+            }
+        }
+        return this;
+    }
+
+    /** Return the merged files, mapping names to blob ids. */
+    public HashMap<String, String> result() {
+        return _result;
+    }
+
+    /** Return the names of the files whose changes conflicted, sorted. */
+    public Set<String> conflicts() {
+        return _conflicts;
+    }
+
+    /** Return true if the changes of some file conflicted. */
+    public boolean hasConflicts() {
+        return !_conflicts.isEmpty();
+    }
+
+    /** Return the id of the blob merging the versions of file NAME with
+     *  ids OURS and THEIRS, changed from BASE, any of which is null where
+     *  the file is absent, or null if the merge removes the file. A
+     *  binary file changed on both sides is left as the current side
+     *  has it, or as the given side does if the current side removed
+     *  it, and reported as a conflict. */
+    private String mergeFile(String name, String base, String ours,
+                             String theirs) throws IOException {
+        if (same(ours, theirs) || same(base, theirs)) {
+            return ours;
+        } else if (same(base, ours)) {
+            return theirs;
+        }
+        byte[] baseContent = content(base), oursContent = content(ours),
+                theirsContent = content(theirs);
+        if (Diff.isBinary(baseContent) || Diff.isBinary(oursContent)
+                || Diff.isBinary(theirsContent)) {
+            _conflicts.add(name);
+            return ours == null ? theirs : ours;
+        }
+        Diff3 merge = new Diff3(baseContent, oursContent, theirsContent);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (merge.write(out)) {
+            _conflicts.add(name);
+        }
+        return Blob.save(_objectDir, out.toByteArray());
+    }
+
+    /** Return the content of the blob with SHA1 code, or nothing if
+     *  SHA1 is null. */
+    private byte[] content(String sha1) {
+        return sha1 == null ? new byte[0] : Blob.fromFile(_objectDir, sha1);
+    }
+
+    /** Return true if blob ids A and B are equal or both null. */
+    private static boolean same(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /** The object directory blobs are read from and saved into. */
+    private final File _objectDir;
+    /** The merged files, mapping names to blob ids. */
+    private final HashMap<String, String> _result = new HashMap<>();
+    /** Names of the files whose changes conflicted. */
+    private final TreeSet<String> _conflicts = new TreeSet<>();
+}
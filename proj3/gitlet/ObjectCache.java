@@ -0,0 +1,100 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Least-recently-used cache of loaded objects, bounded by the total
+ *  size in bytes of the records they were read from. Counts the hits
+ *  and misses of lookups. Safe to use from several threads.
+ *  @author Huixuan Lin
+ */
+public class ObjectCache {
+
+    /** Constructor of an empty cache holding at most CAPACITY bytes. */
+    public ObjectCache(long capacity) {
+        _capacity = capacity;
+        _entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /** Return the object cached under KEY, or null if there is none. */
+    public synchronized Object get(String key) {
+        Entry entry = _entries.get(key);
+        if (entry == null) {
+            _misses += 1;
+            return null;
+        }
+        _hits += 1;
+        return entry.value;
+    }
+
+    /** Cache VALUE under KEY, weighing SIZE bytes, evicting the least
+     *  recently used objects to make room. Objects larger than an
+     *  eighth of the capacity are not cached. */
+    public synchronized void put(String key, Object value, long size) {
+        if (size > _capacity / 8) {
+            return;
+        }
+        remove(key);
+        Entry entry = new Entry();
+        entry.value = value;
+        entry.size = size;
+        _entries.put(key, entry);
+        _size += size;
+        Iterator<Entry> eldest = _entries.values().iterator();
+        while (_size > _capacity && eldest.hasNext()) {
+            _size -= eldest.next().size;
+            eldest.remove();
+        }
+    }
+
+    /** Drop the object cached under KEY, if any. */
+    public synchronized void remove(String key) {
+        Entry old = _entries.remove(key);
+        if (old != null) {
+            _size -= old.size;
+        }
+    }
+
+    /** Drop every cached object and reset the counters. */
+    public synchronized void clear() {
+        _entries.clear();
+        _size = 0;
+        _hits = 0;
+        _misses = 0;
+    }
+
+    /** Return the number of lookups that found their object. */
+    public synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of lookups that did not. */
+    public synchronized long misses() {
+        return _misses;
+    }
+
+    /** Return the number of bytes currently cached. */
+    public synchronized long size() {
+        return _size;
+    }
+
+    /** A cached object and its weight. */
+    private static class Entry {
+        /** The object. */
+        private Object value;
+        /** Size in bytes of the record it was read from. */
+        private long size;
+    }
+
+    /** Largest number of bytes cached. */
+    private final long _capacity;
+    /** Cached entries, least recently used first. */
+    private final Map<String, Entry> _entries;
+    /** Number of bytes cached. */
+    private long _size;
+    /** Number of lookups that found their object. */
+    private long _hits;
+    /** Number of lookups that did not. */
+    private long _misses;
+}
@@ -0,0 +1,100 @@
+package gitlet;
+
+import java.io.File;
+import java.util.function.Function;
+
+/** Reads the objects of one object directory, packed or loose. Loaded
+ *  commits, trees and blob contents are kept in a cache shared by all
+ *  object directories, so an object asked for again is neither read
+ *  nor parsed again.
+ *  @author Huixuan Lin
+ */
+public class ObjectDatabase {
+
+    /** Number of bytes of object records the shared cache holds. */
+    static final long CACHE_BYTES = 64L << 20;
+
+    /** Constructor of the database of object directory DIR. */
+    public ObjectDatabase(File dir) {
+        _dir = dir;
+    }
+
+    /** Return the database of object directory DIR. */
+    public static ObjectDatabase forObjects(File dir) {
+        return new ObjectDatabase(dir);
+    }
+
+    /** Return the cache shared by all databases. */
+    public static ObjectCache cache() {
+        return CACHE;
+    }
+
+    /** Return the record of the object with SHA1 code, packed, loose
+     *  or chunked, or null if there is no such object. */
+    public byte[] read(String sha1) {
+        byte[] packed = Pack.find(Pack.dirFor(_dir), sha1);
+        if (packed != null) {
+            return packed;
+        }
+        File file = Utils.join(_dir, sha1);
+        if (file.isFile()) {
+            return Utils.readContents(file);
+        }
+        ChunkStore chunks = ChunkStore.forObjects(_dir);
+        return chunks.has(sha1) ? chunks.read(sha1) : null;
+    }
+
+    /** Return the commit with SHA1 code. */
+    public Commit commit(String sha1) {
+        return load(sha1, Commit.class,
+                bytes -> Commit.fromBytes(bytes, _dir), "commit");
+    }
+
+    /** Return the tree node with SHA1 code. */
+    public TreeNode node(String sha1) {
+        return load(sha1, TreeNode.class, TreeNode::fromBytes, "tree");
+    }
+
+    /** Return the content of the blob with SHA1 code. */
+    public byte[] blob(String sha1) {
+        return load(sha1, byte[].class, bytes -> bytes, "blob");
+    }
+
+    /** Drop the object with SHA1 code from the cache, as when it has
+     *  just been written. */
+    public void forget(String sha1) {
+        CACHE.remove(key(sha1));
+    }
+
+    /** Return the object of TYPE with SHA1 code, from the cache or
+     *  else read and turned into an object by PARSER. Throws an
+     *  IllegalArgumentException naming the KIND of object if there is
+     *  no such object. */
+    private <T> T load(String sha1, Class<T> type,
+                       Function<byte[], T> parser, String kind) {
+        String key = key(sha1);
+        Object cached = CACHE.get(key);
+        if (type.isInstance(cached)) {
+            return type.cast(cached);
+        }
+        byte[] bytes = read(sha1);
+        if (bytes == null) {
+            throw new IllegalArgumentException(
+                    "No " + kind + " file with that name found.");
+        }
+        T value = parser.apply(bytes);
+        CACHE.put(key, value, bytes.length);
+        return value;
+    }
+
+    /** Return the cache key of the object with SHA1 code. */
+    private String key(String sha1) {
+        return _dir.getPath() + File.separator + sha1;
+    }
+
+    /** Cache shared by all databases. */
+    private static final ObjectCache CACHE = new ObjectCache(CACHE_BYTES);
+
+    /** The object directory read. */
+    private final File _dir;
+}
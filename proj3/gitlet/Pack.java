@@ -0,0 +1,572 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/** A pack of objects appended to one file, with a sorted offset index.
+ *  Objects that look like an earlier object in the pack are stored as
+ *  a delta against it.
+ *  @author Huixuan Lin
+ */
+public class Pack {
+
+    /** Magic number at the front of a pack file. */
+    static final int PACK_MAGIC = 0x47504b31;
+    /** Magic number at the front of a pack index file. */
+    static final int INDEX_MAGIC = 0x47494431;
+    /** Length of an object id in bytes. */
+    static final int ID_BYTES = 20;
+    /** Length of one index entry: id followed by offset. */
+    static final int ENTRY_BYTES = ID_BYTES + 8;
+    /** Length of the header of an index file. */
+    static final int INDEX_HEADER = 8;
+    /** Entry type of an object stored whole. */
+    static final byte FULL = 0;
+    /** Entry type of an object stored as a delta against a base. */
+    static final byte DELTA = 1;
+    /** Number of earlier objects tried as a delta base. */
+    static final int WINDOW = 10;
+    /** Longest chain of deltas allowed before storing an object whole. */
+    static final int MAX_DEPTH = 16;
+    /** Length of the blocks matched between an object and its base. */
+    static final int BLOCK = 16;
+    /** Size above which repack leaves an object loose, so that it can
+     *  still be streamed rather than read whole. */
+    static final long BIG_FILE_THRESHOLD = 1L << 24;
+
+    /** Constructor of the pack whose index is INDEX. */
+    private Pack(File index) throws IOException {
+        String name = index.getName();
+        _pack = Utils.join(index.getParentFile(),
+                name.substring(0, name.length() - ".idx".length())
+                        + ".pack");
+        try (FileChannel channel = FileChannel.open(index.toPath())) {
+            _index = channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size());
+        }
+        if (_index.getInt(0) != INDEX_MAGIC) {
+            throw new IllegalArgumentException("Corrupt pack index.");
+        }
+        _size = _index.getInt(4);
+    }
+
+    /** Return the pack directory of the repository whose object
+     *  directory is OBJECTDIR. */
+    static File dirFor(File objectDir) {
+        return Utils.join(objectDir.getParentFile(), "pack");
+    }
+
+    /** Return the content of object with SHA1 code stored in a pack
+     *  under DIR, or null if no pack there holds it. */
+    public static byte[] find(File dir, String sha1) {
+        if (!isId(sha1)) {
+            return null;
+        }
+        try {
+            byte[] id = toBytes(sha1);
+            for (Pack pack : packs(dir)) {
+                long offset = pack.offset(id);
+                if (offset >= 0) {
+                    return pack.read(offset, 0);
+                }
+            }
+            return null;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return true if a pack under DIR holds object with SHA1 code. */
+    public static boolean contains(File dir, String sha1) {
+        if (!isId(sha1)) {
+            return false;
+        }
+        byte[] id = toBytes(sha1);
+        for (Pack pack : packs(dir)) {
+            if (pack.offset(id) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the ids of all objects in the packs under DIR. */
+    public static List<String> ids(File dir) {
+        List<String> result = new ArrayList<>();
+        for (Pack pack : packs(dir)) {
+            byte[] id = new byte[ID_BYTES];
+            for (int i = 0; i < pack._size; i += 1) {
+                pack.idAt(i, id);
+                result.add(toHex(id));
+            }
+        }
+        return result;
+    }
+
+    /** Fold every loose object of OBJECTDIR, except those larger than
+     *  BIG_FILE_THRESHOLD, into one new pack under PACKDIR, and delete
+     *  the loose copies. The objects are ordered by kind and then by
+     *  size, largest first, so like objects sit in one delta window,
+     *  and are read one at a time as the pack is written.
+     *  @return the number of objects packed. */
+    public static int repack(File objectDir, File packDir)
+            throws IOException {
+        List<String> names = Utils.plainFilenamesIn(objectDir);
+        List<String> order = new ArrayList<>();
+        HashMap<String, Integer> kinds = new HashMap<>();
+        HashMap<String, Long> sizes = new HashMap<>();
+        if (names != null) {
+            for (String name : names) {
+                if (!isId(name)) {
+                    continue;
+                }
+                File object = Utils.join(objectDir, name);
+                if (contains(packDir, name)) {
+                    object.delete();
+                } else if (object.length() <= BIG_FILE_THRESHOLD) {
+                    order.add(name);
+                    kinds.put(name, kind(object));
+                    sizes.put(name, object.length());
+                }
+            }
+        }
+        if (order.isEmpty()) {
+            return 0;
+        }
+        order.sort(Comparator.<String, Integer>comparing(kinds::get)
+                .thenComparing(sizes::get, Comparator.reverseOrder())
+                .thenComparing(Comparator.naturalOrder()));
+        write(packDir, order,
+                id -> Utils.readContents(Utils.join(objectDir, id)));
+        for (String name : order) {
+            Utils.join(objectDir, name).delete();
+        }
+        return order.size();
+    }
+
+    /** Return the kind of the loose object OBJECT, told by the magic
+     *  number at its front: 0 for a commit, 1 for a tree node and 2
+     *  for a blob. */
+    private static int kind(File object) throws IOException {
+        try (DataInputStream in =
+                     new DataInputStream(new FileInputStream(object))) {
+            int magic = in.readInt();
+            return magic == Commit.MAGIC ? 0
+                    : magic == TreeNode.MAGIC ? 1 : 2;
+        } catch (EOFException excp) {
+            return 2;
+        }
+    }
+
+    /** Drop the objects KEEP rejects from the packs under DIR last
+     *  written before CUTOFF, in milliseconds since the epoch, by
+     *  writing the objects of those packs KEEP accepts into one new
+     *  pack and deleting the old packs. Packs written since CUTOFF are
+     *  left as they are.
+     *  @return the number of objects dropped. */
+    static int rewrite(File dir, long cutoff, Predicate<String> keep)
+            throws IOException {
+        List<Pack> old = new ArrayList<>();
+        List<String> kept = new ArrayList<>();
+        int dropped = 0;
+        byte[] id = new byte[ID_BYTES];
+        for (Pack pack : packs(dir)) {
+            if (pack._pack.lastModified() >= cutoff) {
+                continue;
+            }
+            old.add(pack);
+            for (int i = 0; i < pack._size; i += 1) {
+                pack.idAt(i, id);
+                String hex = toHex(id);
+                if (keep.test(hex)) {
+                    kept.add(hex);
+                } else {
+                    dropped += 1;
+                }
+            }
+        }
+        if (dropped == 0) {
+            return 0;
+        }
+        File written = kept.isEmpty() ? null
+                : write(dir, kept, hex -> find(dir, hex));
+        for (Pack pack : old) {
+            if (!pack._pack.equals(written)) {
+                String name = pack._pack.getName();
+                pack._pack.delete();
+                Utils.join(dir, name.substring(0, name.length()
+                        - ".pack".length()) + ".idx").delete();
+            }
+        }
+        PACKS.remove(dir.getAbsolutePath());
+        return dropped;
+    }
+
+    /** Write the objects with ids ORDER, in that order, as one new pack
+     *  under DIR, asking SOURCE for the content of each in turn. Only
+     *  the last WINDOW objects are held, as candidate delta bases.
+     *  @return the pack file written. */
+    static File write(File dir, List<String> order,
+                      Function<String, byte[]> source) throws IOException {
+        dir.mkdirs();
+        String name = "pack-" + Utils.sha1(order.toArray());
+        File packFile = Utils.join(dir, name + ".pack");
+        HashMap<String, Long> offsets = new HashMap<>();
+        HashMap<String, Integer> depths = new HashMap<>();
+        ArrayDeque<String> window = new ArrayDeque<>();
+        HashMap<String, byte[]> recent = new HashMap<>();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(packFile)))) {
+            out.writeInt(PACK_MAGIC);
+            out.writeInt(order.size());
+            for (String id : order) {
+                byte[] content = source.apply(id);
+                byte[] best = null;
+                String bestBase = null;
+                for (String base : window) {
+                    if (depths.get(base) >= MAX_DEPTH) {
+                        continue;
+                    }
+                    byte[] delta = delta(recent.get(base), content);
+                    if (delta.length < content.length / 2
+                            && (best == null || delta.length < best.length)) {
+                        best = delta;
+                        bestBase = base;
+                    }
+                }
+                offsets.put(id, (long) out.size());
+                if (best == null) {
+                    out.writeByte(FULL);
+                    writeDeflated(out, content);
+                    depths.put(id, 0);
+                } else {
+                    out.writeByte(DELTA);
+                    out.write(toBytes(bestBase));
+                    writeDeflated(out, best);
+                    depths.put(id, depths.get(bestBase) + 1);
+                }
+                window.addLast(id);
+                recent.put(id, content);
+                if (window.size() > WINDOW) {
+                    recent.remove(window.removeFirst());
+                }
+            }
+        }
+        List<String> sorted = new ArrayList<>(order);
+        Collections.sort(sorted);
+        File indexFile = Utils.join(dir, name + ".idx");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(sorted.size());
+            for (String id : sorted) {
+                out.write(toBytes(id));
+                out.writeLong(offsets.get(id));
+            }
+        }
+        PACKS.remove(dir.getAbsolutePath());
+        return packFile;
+    }
+
+    /** Return the packs under DIR, loading their indices if needed. */
+    private static List<Pack> packs(File dir) {
+        String key = dir.getAbsolutePath();
+        List<Pack> result = PACKS.get(key);
+        if (result == null
+                || dir.lastModified() != PACK_TIMES.get(key)) {
+            result = new ArrayList<>();
+            String[] names = dir.list();
+            if (names != null) {
+                Arrays.sort(names);
+                for (String name : names) {
+                    if (name.endsWith(".idx")) {
+                        try {
+                            result.add(new Pack(Utils.join(dir, name)));
+                        } catch (IOException excp) {
+                            throw new IllegalArgumentException(
+                                    excp.getMessage());
+                        }
+                    }
+                }
+            }
+            PACK_TIMES.put(key, dir.lastModified());
+            PACKS.put(key, result);
+        }
+        return result;
+    }
+
+    /** Return the offset in this pack of object with ID,
+     *  or -1 if this pack does not hold it. */
+    private long offset(byte[] id) {
+        int lo = 0, hi = _size - 1;
+        byte[] probe = new byte[ID_BYTES];
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            idAt(mid, probe);
+            int cmp = Arrays.compareUnsigned(probe, id);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return _index.getLong(INDEX_HEADER + mid * ENTRY_BYTES
+                        + ID_BYTES);
+            }
+        }
+        return -1;
+    }
+
+    /** Copy the id of the INDEXth entry of this pack into ID. */
+    private void idAt(int index, byte[] id) {
+        ByteBuffer entry = _index.duplicate();
+        entry.position(INDEX_HEADER + index * ENTRY_BYTES);
+        entry.get(id);
+    }
+
+    /** Return the content of the object at OFFSET in this pack,
+     *  which is DEPTH deltas away from the object asked for. */
+    private byte[] read(long offset, int depth) throws IOException {
+        if (depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("Delta chain too long.");
+        }
+        try (RandomAccessFile file = new RandomAccessFile(_pack, "r")) {
+            file.seek(offset);
+            byte type = file.readByte();
+            byte[] base = null;
+            if (type == DELTA) {
+                base = new byte[ID_BYTES];
+                file.readFully(base);
+            }
+            int length = file.readInt();
+            byte[] data = new byte[file.readInt()];
+            file.readFully(data);
+            byte[] content = inflate(data, length);
+            if (type == FULL) {
+                return content;
+            }
+            long baseOffset = offset(base);
+            if (baseOffset < 0) {
+                throw new IllegalArgumentException("Missing delta base.");
+            }
+            return patch(read(baseOffset, depth + 1), content);
+        }
+    }
+
+    /** Write CONTENT to OUT deflated, preceded by its inflated and
+     *  deflated lengths. */
+    private static void writeDeflated(DataOutputStream out, byte[] content)
+            throws IOException {
+        Deflater deflater = new Deflater();
+        deflater.setInput(content);
+        deflater.finish();
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            deflated.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        out.writeInt(content.length);
+        out.writeInt(deflated.size());
+        deflated.writeTo(out);
+    }
+
+    /** Return DATA inflated into LENGTH bytes. DATA that ends early,
+     *  needs a dictionary or inflates to fewer bytes is corrupt. */
+    static byte[] inflate(byte[] data, int length) {
+        Inflater inflater = new Inflater();
+        inflater.setInput(data);
+        byte[] result = new byte[length];
+        try {
+            int done = 0;
+            while (done < length && !inflater.finished()) {
+                int count = inflater.inflate(result, done, length - done);
+                if (count == 0 && (inflater.needsInput()
+                        || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Corrupt pack entry.");
+                }
+                done += count;
+            }
+            if (done < length) {
+                throw new IllegalArgumentException("Corrupt pack entry.");
+            }
+        } catch (DataFormatException excp) {
+            throw new IllegalArgumentException("Corrupt pack entry.");
+        } finally {
+            inflater.end();
+        }
+        return result;
+    }
+
+    /** Return a delta turning BASE into TARGET: a sequence of copy
+     *  instructions (offset and length into BASE) and literal inserts. */
+    static byte[] delta(byte[] base, byte[] target) {
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream literal = new ByteArrayOutputStream();
+        int i = 0;
+        while (i < target.length) {
+            Integer start = i + BLOCK <= target.length
+                    ? blocks.get(hash(target, i)) : null;
+            int length = 0;
+            if (start != null) {
+                while (start + length < base.length
+                        && i + length < target.length
+                        && base[start + length] == target[i + length]) {
+                    length += 1;
+                }
+            }
+            if (length >= BLOCK) {
+                flushLiteral(out, literal);
+                out.write(0x80);
+                writeVarint(out, start);
+                writeVarint(out, length);
+                i += length;
+            } else {
+                literal.write(target[i]);
+                i += 1;
+            }
+        }
+        flushLiteral(out, literal);
+        return out.toByteArray();
+    }
+
+    /** Return the result of applying DELTA to BASE. */
+    static byte[] patch(byte[] base, byte[] delta) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int[] pos = {0};
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]] & 0xff;
+            pos[0] += 1;
+            if (op == 0x80) {
+                int start = readVarint(delta, pos);
+                int length = readVarint(delta, pos);
+                out.write(base, start, length);
+            } else {
+                out.write(delta, pos[0], op);
+                pos[0] += op;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /** Write the bytes collected in LITERAL to OUT as insert
+     *  instructions of at most 127 bytes each, and clear LITERAL. */
+    private static void flushLiteral(ByteArrayOutputStream out,
+                                     ByteArrayOutputStream literal) {
+        byte[] bytes = literal.toByteArray();
+        for (int i = 0; i < bytes.length; i += 0x7f) {
+            int length = Math.min(0x7f, bytes.length - i);
+            out.write(length);
+            out.write(bytes, i, length);
+        }
+        literal.reset();
+    }
+
+    /** Write non-negative VALUE to OUT, seven bits per byte. */
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while (value >= 0x80) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /** Return the varint in DATA at POS[0], advancing POS[0] past it. */
+    private static int readVarint(byte[] data, int[] pos) {
+        int value = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = data[pos[0]] & 0xff;
+            pos[0] += 1;
+            value |= (b & 0x7f) << shift;
+            if (b < 0x80) {
+                return value;
+            }
+        }
+    }
+
+    /** Return a hash of the BLOCK bytes of DATA starting at START. */
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int i = start; i < start + BLOCK; i += 1) {
+            h = 31 * h + data[i];
+        }
+        return h;
+    }
+
+    /** Return true if NAME is a full hexadecimal SHA1 code. */
+    static boolean isId(String name) {
+        if (name.length() != Utils.UID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i += 1) {
+            if (HEX.indexOf(name.charAt(i)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the 20 bytes denoted by hexadecimal SHA1 code. */
+    static byte[] toBytes(String sha1) {
+        byte[] result = new byte[ID_BYTES];
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            result[i] = (byte) (Character.digit(sha1.charAt(2 * i), 16) << 4
+                    | Character.digit(sha1.charAt(2 * i + 1), 16));
+        }
+        return result;
+    }
+
+    /** Return the hexadecimal SHA1 code denoted by ID. */
+    static String toHex(byte[] id) {
+        char[] result = new char[2 * id.length];
+        for (int i = 0; i < id.length; i += 1) {
+            result[2 * i] = HEX.charAt((id[i] >> 4) & 0xf);
+            result[2 * i + 1] = HEX.charAt(id[i] & 0xf);
+        }
+        return new String(result);
+    }
+
+    /** Hexadecimal digits. */
+    private static final String HEX = "0123456789abcdef";
+    /** Loaded packs, keyed by the absolute path of their directory. */
+    private static final Map<String, List<Pack>> PACKS =
+            new ConcurrentHashMap<>();
+    /** Modification time of each pack directory when last loaded. */
+    private static final Map<String, Long> PACK_TIMES =
+            new ConcurrentHashMap<>();
+
+    /** The pack file holding the objects. */
+    private final File _pack;
+    /** The memory-mapped index of this pack. */
+    private final MappedByteBuffer _index;
+    /** The number of objects in this pack. */
+    private final int _size;
+}
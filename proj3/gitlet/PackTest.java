@@ -0,0 +1,128 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.*;
+
+/** Tests of packs: the delta encoding and repacking loose objects.
+ *  @author Huixuan Lin
+ */
+public class PackTest {
+
+    /** Return LENGTH random bytes drawn from RANDOM. */
+    private static byte[] randomBytes(Random random, int length) {
+        byte[] result = new byte[length];
+        random.nextBytes(result);
+        return result;
+    }
+
+    /** Check that patching BASE with the delta from BASE to TARGET gives
+     *  TARGET back. */
+    private static void checkRoundTrip(byte[] base, byte[] target) {
+        assertArrayEquals(target, Pack.patch(base, Pack.delta(base, target)));
+    }
+
+    /** Return CONTENT deflated. */
+    private static byte[] deflate(byte[] content) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(content);
+        deflater.finish();
+        byte[] buffer = new byte[content.length + 64];
+        int length = deflater.deflate(buffer);
+        deflater.end();
+        return Arrays.copyOf(buffer, length);
+    }
+
+    /** Check that inflating DATA into LENGTH bytes fails as corrupt. */
+    private static void checkCorrupt(byte[] data, int length) {
+        try {
+            Pack.inflate(data, length);
+            fail("inflated a corrupt entry");
+        } catch (IllegalArgumentException excp) {
+            assertEquals("Corrupt pack entry.", excp.getMessage());
+        }
+    }
+
+    @Test
+    public void inflateRejectsCorruptEntries() {
+        byte[] content = randomBytes(new Random(60), 5000);
+        byte[] data = deflate(content);
+        assertArrayEquals(content, Pack.inflate(data, content.length));
+        checkCorrupt(Arrays.copyOf(data, data.length / 2), content.length);
+        checkCorrupt(new byte[0], content.length);
+        checkCorrupt(data, content.length + 1);
+        checkCorrupt(new byte[] {1, 2, 3, 4}, content.length);
+    }
+
+    @Test
+    public void deltaOfEmptyContents() {
+        byte[] some = "some content".getBytes(StandardCharsets.UTF_8);
+        checkRoundTrip(new byte[0], new byte[0]);
+        checkRoundTrip(new byte[0], some);
+        checkRoundTrip(some, new byte[0]);
+    }
+
+    @Test
+    public void deltaOfEditedContent() {
+        Random random = new Random(61);
+        byte[] base = randomBytes(random, 10000);
+        byte[] target = new byte[base.length + 300];
+        System.arraycopy(base, 0, target, 0, 4000);
+        System.arraycopy(randomBytes(random, 500), 0, target, 4000, 500);
+        System.arraycopy(base, 4200, target, 4500, 5800);
+        checkRoundTrip(base, target);
+        checkRoundTrip(target, base);
+        assertTrue(Pack.delta(base, target).length < 1000);
+    }
+
+    @Test
+    public void deltaOfUnrelatedContent() {
+        Random random = new Random(62);
+        for (int length : new int[] {1, 15, 16, 17, 127, 128, 5000}) {
+            checkRoundTrip(randomBytes(random, length),
+                    randomBytes(random, length));
+        }
+    }
+
+    @Test
+    public void deltaOfIdenticalContent() {
+        byte[] base = randomBytes(new Random(63), 4096);
+        checkRoundTrip(base, base.clone());
+        assertTrue(Pack.delta(base, base).length < 16);
+    }
+
+    @Test
+    public void repackKeepsEveryObject() throws IOException {
+        File repo = UnitTest.scratch();
+        try {
+            File objects = Utils.join(repo, "object");
+            objects.mkdir();
+            Random random = new Random(64);
+            byte[] base = randomBytes(random, 3000);
+            String[] ids = new String[20];
+            byte[][] contents = new byte[ids.length][];
+            for (int i = 0; i < ids.length; i += 1) {
+                contents[i] = base.clone();
+                contents[i][random.nextInt(base.length)] ^= 1;
+                ids[i] = Blob.save(objects, contents[i]);
+            }
+            assertEquals(ids.length,
+                    Pack.repack(objects, Pack.dirFor(objects)));
+            for (int i = 0; i < ids.length; i += 1) {
+                assertFalse(Utils.join(objects, ids[i]).exists());
+                assertArrayEquals(contents[i],
+                        Pack.find(Pack.dirFor(objects), ids[i]));
+            }
+            assertEquals(0, Pack.repack(objects, Pack.dirFor(objects)));
+        } finally {
+            UnitTest.delete(repo);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/** Reachability index of a commit graph. For each commit, in graph
+ *  order, a side file holds the set of graph positions of its
+ *  ancestors as a bitmap of sorted runs, so that a linear stretch of
+ *  history costs one run however long it is. A second file holds the
+ *  offset of each commit's bitmap.
+ *  @author Huixuan Lin
+ */
+public class Reachability {
+
+    /** Constructor of the index stored in BITMAPS with offsets
+     *  in OFFSETS. */
+    public Reachability(File bitmaps, File offsets) {
+        _bitmaps = bitmaps;
+        _offsets = offsets;
+    }
+
+    /** Return the reachability index of the repository whose object
+     *  directory is OBJECTDIR. */
+    public static Reachability forObjects(File objectDir) {
+        return forRepo(objectDir.getParentFile());
+    }
+
+    /** Return the reachability index of the repository REPO. */
+    public static Reachability forRepo(File repo) {
+        return new Reachability(Utils.join(repo, "reachability"),
+                Utils.join(repo, "reachability.idx"));
+    }
+
+    /** Record the commit at graph POSITION, whose parents are at
+     *  PARENT and SECOND (or CommitGraph.NONE). Every earlier commit of
+     *  the graph must already be recorded; throws an
+     *  IllegalArgumentException otherwise. */
+    public void add(int position, int parent, int second)
+            throws IOException {
+        if (size() != position) {
+            throw new IllegalArgumentException(String.format(
+                    "Reachability index holds %d commits, not %d.",
+                    size(), position));
+        }
+        int[] runs = new int[0];
+        for (int p : new int[] {parent, second}) {
+            if (p != CommitGraph.NONE) {
+                runs = union(runs, union(bitmap(p), new int[] {p, p + 1}));
+            }
+        }
+        long offset = _bitmaps.length();
+        try (FileOutputStream out = new FileOutputStream(_bitmaps, true)) {
+            out.write(encode(runs));
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(_offsets, true))) {
+            out.writeLong(offset);
+        }
+    }
+
+    /** Record the commits of GRAPH the index is missing, taking their
+     *  parents from GRAPH. If the index holds more commits than GRAPH,
+     *  it was not written for GRAPH and is rebuilt from the start. */
+    public void update(CommitGraph graph) throws IOException {
+        if (size() > graph.size()) {
+            _bitmaps.delete();
+            _offsets.delete();
+        }
+        for (int p = size(); p < graph.size(); p += 1) {
+            add(p, graph.parent(p), graph.secondParent(p));
+        }
+    }
+
+    /** Return true if the commit at graph position ANCESTOR is an
+     *  ancestor of the commit at graph position DESCENDANT. */
+    public boolean isAncestor(int ancestor, int descendant) {
+        if (ancestor == CommitGraph.NONE || descendant == CommitGraph.NONE
+                || descendant >= size()) {
+            return false;
+        }
+        return contains(bitmap(descendant), ancestor);
+    }
+
+    /** Return the number of commits recorded. */
+    public int size() {
+        return (int) (_offsets.length() / 8);
+    }
+
+    /** Return the runs of ancestors of the commit at POSITION, as
+     *  pairs of start (inclusive) and end (exclusive) positions. */
+    int[] bitmap(int position) {
+        try (RandomAccessFile offsets = new RandomAccessFile(_offsets, "r");
+             RandomAccessFile bitmaps = new RandomAccessFile(_bitmaps, "r")) {
+            offsets.seek(8L * position);
+            long start = offsets.readLong();
+            long end = position + 1 < size()
+                    ? offsets.readLong() : bitmaps.length();
+            byte[] bytes = new byte[(int) (end - start)];
+            bitmaps.seek(start);
+            bitmaps.readFully(bytes);
+            return decode(bytes);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return true if RUNS contain VALUE. */
+    static boolean contains(int[] runs, int value) {
+        int lo = 0, hi = runs.length / 2 - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (value < runs[2 * mid]) {
+                hi = mid - 1;
+            } else if (value >= runs[2 * mid + 1]) {
+                lo = mid + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the union of runs A and B. */
+    static int[] union(int[] a, int[] b) {
+        int[] result = new int[a.length + b.length];
+        int n = 0, i = 0, j = 0;
+        while (i < a.length || j < b.length) {
+            int start, end;
+            if (j >= b.length || (i < a.length && a[i] <= b[j])) {
+                start = a[i];
+                end = a[i + 1];
+                i += 2;
+            } else {
+                start = b[j];
+                end = b[j + 1];
+                j += 2;
+            }
+            if (n > 0 && start <= result[n - 1]) {
+                result[n - 1] = Math.max(result[n - 1], end);
+            } else {
+                result[n] = start;
+                result[n + 1] = end;
+                n += 2;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Return RUNS encoded as a count followed by the gap before and
+     *  the length of each run, as varints. */
+    static byte[] encode(int[] runs) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, runs.length / 2);
+        int last = 0;
+        for (int i = 0; i < runs.length; i += 2) {
+            writeVarint(out, runs[i] - last);
+            writeVarint(out, runs[i + 1] - runs[i]);
+            last = runs[i + 1];
+        }
+        return out.toByteArray();
+    }
+
+    /** Return the runs encoded in BYTES. */
+    static int[] decode(byte[] bytes) {
+        int[] pos = {0};
+        int[] runs = new int[2 * readVarint(bytes, pos)];
+        int last = 0;
+        for (int i = 0; i < runs.length; i += 2) {
+            runs[i] = last + readVarint(bytes, pos);
+            runs[i + 1] = runs[i] + readVarint(bytes, pos);
+            last = runs[i + 1];
+        }
+        return runs;
+    }
+
+    /** Write non-negative VALUE to OUT, seven bits per byte. */
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while (value >= 0x80) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /** Return the varint in DATA at POS[0], advancing POS[0] past it. */
+    private static int readVarint(byte[] data, int[] pos) {
+        int value = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = data[pos[0]] & 0xff;
+            pos[0] += 1;
+            value |= (b & 0x7f) << shift;
+            if (b < 0x80) {
+                return value;
+            }
+        }
+    }
+
+    /** File holding the bitmaps, one after another in graph order. */
+    private final File _bitmaps;
+    /** File holding the offset of each bitmap in _bitmaps. */
+    private final File _offsets;
+}
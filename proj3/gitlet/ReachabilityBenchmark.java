@@ -0,0 +1,144 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.HashSet;
+
+/** Compares a linear history stored as before, with the set of ids of
+ *  its ancestors serialized in every commit, against the commit records
+ *  with the commit graph and the reachability index: the total size
+ *  written, the time to write it, and the time to ask whether the root
+ *  is an ancestor of the head. Each serialized commit is deleted once
+ *  its child is written, so the scratch directory never holds more than
+ *  two of them; the size reported is the sum of all of them.
+ *  Usage: java gitlet.ReachabilityBenchmark [COMMITS]
+ *  What the serialized store writes grows with the square of COMMITS.
+ *  The default run, of 5,000 commits, takes some seconds and writes
+ *  about 540 MB to a scratch directory it removes afterwards, though
+ *  the directory never holds more than a few MB at once; 50,000
+ *  commits write about 54 GB and take several minutes.
+ *  @author Huixuan Lin
+ */
+public class ReachabilityBenchmark {
+
+    /** Number of commits in the history unless given on the command
+     *  line. */
+    static final int DEFAULT_COMMITS = 5000;
+
+    /** Build a linear history of ARGS[0] commits both ways in a scratch
+     *  directory and report the results. */
+    public static void main(String... args) throws IOException {
+        int commits = args.length > 0
+                ? Integer.parseInt(args[0]) : DEFAULT_COMMITS;
+        File dir = Files.createTempDirectory("gitlet-bench").toFile();
+        try {
+            File legacy = Utils.join(dir, "serialized");
+            legacy.mkdir();
+            File repo = Utils.join(dir, "repo");
+            File objects = Utils.join(repo, "object");
+            objects.mkdirs();
+
+            long start = System.nanoTime();
+            long before = 0;
+            LegacyCommit parent = null;
+            File parentFile = null;
+            String root = null;
+            for (int i = 0; i < commits; i += 1) {
+                LegacyCommit commit = new LegacyCommit("commit " + i, parent);
+                File file = Utils.join(legacy, commit.id);
+                Utils.writeObject(file, commit);
+                before += file.length();
+                if (parentFile != null) {
+                    parentFile.delete();
+                }
+                root = root == null ? commit.id : root;
+                parent = commit;
+                parentFile = file;
+            }
+            long beforeWrite = System.nanoTime() - start;
+            start = System.nanoTime();
+            boolean beforeFound = Utils.readObject(parentFile,
+                    LegacyCommit.class).ancestors.contains(root);
+            long beforeQuery = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long records = 0;
+            Commit last = null;
+            for (int i = 0; i < commits; i += 1) {
+                Commit commit = new Commit(null, "commit " + i);
+                commit.setParent(last);
+                commit.saveCommit(objects);
+                records += commit.toBytes().length;
+                last = commit;
+            }
+            long afterWrite = System.nanoTime() - start;
+            long graph = Utils.join(repo, "commit-graph").length();
+            long index = Utils.join(repo, "reachability").length()
+                    + Utils.join(repo, "reachability.idx").length();
+            start = System.nanoTime();
+            CommitGraph commitGraph = CommitGraph.forObjects(objects);
+            boolean afterFound = commitGraph.isAncestor(
+                    commitGraph.id(0), commitGraph.id(commits - 1));
+            long afterQuery = System.nanoTime() - start;
+
+            System.out.printf("linear history of %,d commits%n", commits);
+            System.out.printf("before: %,d bytes written in %,d ms "
+                    + "(serialized commits with ancestor sets)%n",
+                    before, beforeWrite / 1000000);
+            System.out.printf("after:  %,d bytes written in %,d ms "
+                    + "(commit records %,d, commit-graph %,d, "
+                    + "reachability %,d)%n", records + graph + index,
+                    afterWrite / 1000000, records, graph, index);
+            System.out.printf("isAncestor(root, head): before %b in %,d us,"
+                    + " after %b in %,d us%n", beforeFound,
+                    beforeQuery / 1000, afterFound, afterQuery / 1000);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Delete FILE and, if it is a directory, everything in it. */
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /** The ancestry fields of a commit as they were serialized. */
+    private static class LegacyCommit implements Serializable {
+        /** Constructor of the commit with MESSAGE on PARENT, or of a
+         *  root commit if PARENT is null. */
+        LegacyCommit(String message, LegacyCommit parent) {
+            this.message = message;
+            this.timeStamps = Long.toString(System.currentTimeMillis());
+            this.treeSha1 = Utils.sha1("tree");
+            this.parentId = parent == null ? null : parent.id;
+            this.ancestors = parent == null
+                    ? new HashSet<>() : new HashSet<>(parent.ancestors);
+            if (parent != null) {
+                this.ancestors.add(parent.id);
+            }
+            this.id = Utils.sha1(treeSha1, message,
+                    parentId == null ? "" : parentId, timeStamps);
+        }
+
+        /** Commit message. */
+        private final String message;
+        /** The time of the commit. */
+        private final String timeStamps;
+        /** Id of the tree of the commit. */
+        private final String treeSha1;
+        /** Id of the first parent, or null. */
+        private final String parentId;
+        /** Ids of every ancestor. */
+        private final HashSet<String> ancestors;
+        /** Id of the commit. */
+        private final String id;
+    }
+}
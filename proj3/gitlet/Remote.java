@@ -1,15 +1,18 @@
 package gitlet;
 
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.Serializable;
 import java.util.HashMap;
 
 /** The remote class for which the current
  * working directory can do remote comand.
  * @author Huixuan Lin
  */
-public class Remote implements Serializable {
+public class Remote {
+
+    /** Magic number at the front of a remote file. */
+    static final int MAGIC = 0x47524d31;
 
     /** The current working directory for remote. */
     private File cwd;
@@ -26,17 +29,23 @@ public class Remote implements Serializable {
     /** GitLet commit history file. */
     private File history;
 
-    /** Constructor of remote with NAME and DIRECTORY. */
+    /** Constructor of remote with NAME and DIRECTORY, which is saved. */
     public Remote(String name, String directory) throws IOException {
+        this(name, new File(directory));
+        saveRemote();
+    }
+
+    /** Constructor of remote with NAME and gitlet repo directory REPODIR,
+     *  which is not saved. */
+    private Remote(String name, File repoDir) {
         _name = name;
-        repo = new File(directory);
+        repo = repoDir;
         cwd = Utils.join(repo, "..");
         object = Utils.join(repo, "object");
         branch = Utils.join(repo, "branch");
         stage = Utils.join(repo, "stage");
         history = Utils.join(repo, "history");
         currentBranch = Utils.join(repo, "current-branch");
-        saveRemote();
     }
 
     /** Get the name of remote.
@@ -45,6 +54,12 @@ public class Remote implements Serializable {
         return _name;
     }
 
+    /** Return true if this remote is a bundle file rather than
+     *  a gitlet repo directory. */
+    public boolean isBundle() {
+        return repo.getName().endsWith(".bundle");
+    }
+
     /** Return the gitlet repo directory for remote.
      * @return current repo directory. */
     public File getRepo() {
@@ -74,37 +89,15 @@ public class Remote implements Serializable {
      * @param  sha1 of blob to load
      * @return Blob read from file
      */
-    public String blobFromFile(String sha1) {
-        File blobFile = Utils.join(object, sha1);
-        if (!blobFile.exists()) {
-            throw new IllegalArgumentException(
-                    "No blob file with that name found.");
-        }
-        return Utils.readContentsAsString(blobFile);
-    }
-
-    /** Reads in and deserializes a tree from a file with SHA1 code.
-     * @param  sha1 of tree to load
-     * @return Tree read from file */
-    public Tree treeFromFile(String sha1) {
-        File treeFile = Utils.join(object, sha1);
-        if (!treeFile.exists()) {
-            throw new IllegalArgumentException(
-                    "No tree file with that name found.");
-        }
-        return Utils.readObject(treeFile, Tree.class);
+    public byte[] blobFromFile(String sha1) {
+        return Blob.fromFile(object, sha1);
     }
 
     /** Reads in and deserializes a commit from a file with SHA1 code.
      * @param  sha1 of commit to load
      * @return Commit read from file */
     public Commit commitFromFile(String sha1) {
-        File commitFile = Utils.join(object, sha1);
-        if (!commitFile.exists()) {
-            throw new IllegalArgumentException(
-                    "No commit file with that name found.");
-        }
-        return Utils.readObject(commitFile, Commit.class);
+        return Commit.fromFile(object, sha1);
     }
 
     /** Reads in and deserializes a branch.
@@ -116,7 +109,7 @@ public class Remote implements Serializable {
             throw new IllegalArgumentException(
                     "No branch file with that name found.");
         }
-        return Utils.readObject(branchFile, Branch.class);
+        return Branch.fromFile(branchFile);
     }
 
     /** Reads in and deserializes current history
@@ -127,7 +120,7 @@ public class Remote implements Serializable {
             throw new IllegalArgumentException(
                     "No history file.");
         }
-        return Utils.readObject(stageFile, History.class);
+        return new History(stageFile, object);
     }
 
     /** Reads in and deserializes a history.
@@ -138,35 +131,40 @@ public class Remote implements Serializable {
             throw new IllegalArgumentException(
                     "No stage file with that branch found.");
         }
-        return Utils.readObject(stageFile, Stage.class);
+        return Stage.fromFile(stageFile);
     }
 
     /**
-     * Checks out all the files tracked by the given FILEMAP.
-     * Removes tracked files that
-     * are not present in that commit.
+     * Checks out all the files tracked by the given FILEMAP, whose
+     * values are ids of blobs already sent to the remote.
+     * Removes tracked files that are not present in that commit.
      */
     public void reset(HashMap<String, String> fileMap) throws IOException {
-        if (cwd.list() != null) {
-            for (File file : cwd.listFiles()) {
-                if (!file.isHidden()
-                        && !file.getName().equals("Makefile")
-                        && !file.getName().endsWith(".iml")) {
-                    file.delete();
-                }
-            }
-        }
-        for (String name : fileMap.keySet()) {
-            Utils.join(cwd, name).createNewFile();
-            Utils.writeContents(Utils.join(cwd,
-                    name), fileMap.get(name));
+        Index index = Index.fromFile(Utils.join(repo, "index"), cwd);
+        new Checkout(cwd, object, index).apply(currentFiles(), fileMap);
+        index.save();
+    }
+
+    /** Return the files of the head commit of the remote's current
+     *  branch, which its working directory holds, or an empty map if
+     *  that commit cannot be read. */
+    public HashMap<String, String> currentFiles() {
+        try {
+            String name = Utils.readContentsAsString(currentBranch);
+            Commit head = commitFromFile(branchFromFile(name).getHead());
+            return head.getFiles();
+        } catch (IllegalArgumentException excp) {
+            return new HashMap<>();
         }
     }
 
-    /** Save a remote to a file as future use. */
+    /** Save a remote to a file as future use: its name and the path
+     *  of its repo directory, from which the others follow. */
     public void saveRemote() throws IOException {
-        Utils.join(Main.REMOTE, _name).createNewFile();
-        Utils.writeObject(Utils.join(Main.REMOTE, _name), this);
+        StateCodec.write(Utils.join(Main.REMOTE, _name), MAGIC, out -> {
+            out.writeUTF(_name);
+            out.writeUTF(repo.getPath());
+        });
     }
 
     /** Reads in and deserializes a remote from NAME.
@@ -176,7 +174,12 @@ public class Remote implements Serializable {
             throw new IllegalArgumentException(
                     "No remote file with that name found.");
         }
-        return Utils.readObject(Utils.join(Main.REMOTE, name), Remote.class);
+        try (DataInputStream in = StateCodec.open(
+                Utils.join(Main.REMOTE, name), MAGIC, "remote")) {
+            return new Remote(in.readUTF(), new File(in.readUTF()));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException("Corrupt remote file.");
+        }
     }
 
     /** Name of the remote. */
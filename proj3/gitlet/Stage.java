@@ -1,14 +1,20 @@
 package gitlet;
+import java.io.DataInputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.Serializable;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Set;
 
 /** The staging area for gitlet.
  * @author Huixuan Lin
  */
-public class Stage implements Serializable {
+public class Stage {
+
+    /** Magic number at the front of a stage file. */
+    static final int MAGIC = 0x47535431;
+
     /** Constructor of stage under BRANCH. */
     public Stage(String branch) {
         _tracked = new HashMap<>();
@@ -20,43 +26,47 @@ public class Stage implements Serializable {
     public void copy(Stage stage) {
         _tree = stage.getTreeLink();
         _tracked = stage.getTracked();
+        _root = stage._root;
+        _changed = stage._changed;
     }
 
     /** Add BLOB to the staging area, waiting to be committed. */
     public void add(Blob blob) throws IOException {
         if (!hasTree()) {
-            Tree currentTree = new Tree();
-            currentTree.setTracked(_tracked);
-            _tree.add(currentTree);
+            _tree.add(new Tree(_tracked));
         }
         _tree.get(0).add(blob);
-        updateTracked();
     }
 
     /** Mark file with FILENAME to be removed. */
     public void toRemove(String fileName) {
         if (!hasTree()) {
-            Tree currentTree = new Tree();
-            currentTree.setTracked(_tracked);
-            _tree.add(currentTree);
+            _tree.add(new Tree(_tracked));
         }
+        _changed.add(fileName);
         _tree.get(0).toRemove(fileName);
-        updateTracked();
+        _tracked.remove(fileName);
     }
 
     /** Unstage the file with FILENAME if it is currently staged. */
     public void rm(String fileName) {
         if (hasTree()) {
             _tree.get(0).rm(fileName);
-            updateTracked();
         }
     }
 
     /** After committing, make all staged files unstaged. */
-    public void commit() {
+    public void commit() throws IOException {
         if (hasTree()) {
-            _tree.get(0).commit();
-            updateTracked();
+            Tree tree = _tree.get(0);
+            _tracked.putAll(tree.getStaged());
+            if (_root == null) {
+                tree.commit();
+            } else {
+                tree.commit(_root, _changed);
+            }
+            _root = tree.getSha1();
+            _changed.clear();
         }
     }
 
@@ -83,17 +93,20 @@ public class Stage implements Serializable {
         return _tree.get(0).getStaged();
     }
 
-    /** Update the tracked file of the staging area. */
-    public void updateTracked() {
-        _tracked.clear();
-        _tracked.putAll(_tree.get(0).getTracked());
-    }
-
     /** Return the ordered name of staged files. */
     public Set<String> getStagedName() {
         return _tree.get(0).getStagedName();
     }
 
+    /** Track FILES, mapping names to blob ids, as those of the head
+     *  commit of this stage's branch, whose root tree node is ROOT. */
+    public void setTracked(HashMap<String, String> files, String root) {
+        _tracked.clear();
+        _tracked.putAll(files);
+        _root = root;
+        _changed.clear();
+    }
+
     /** Return the collection of tracked files. */
     public HashMap<String, String> getTracked() {
         return _tracked;
@@ -125,9 +138,23 @@ public class Stage implements Serializable {
 
     /** Save a stage as BRANCH to a file as future use. */
     public void saveStage(String branch) throws IOException {
-        Utils.join(Main.STAGE, branch).createNewFile();
         _branch = branch;
-        Utils.writeObject(Utils.join(Main.STAGE, branch), this);
+        saveStage(Utils.join(Main.STAGE, branch));
+    }
+
+    /** Save this stage to FILE: its branch, root and changed names, its
+     *  tracked files, and its tree, if it has one. */
+    public void saveStage(File file) throws IOException {
+        StateCodec.write(file, MAGIC, out -> {
+            out.writeUTF(_branch);
+            StateCodec.writeId(out, _root);
+            StateCodec.writeNames(out, _changed);
+            StateCodec.writeFiles(out, _tracked);
+            out.writeBoolean(hasTree());
+            if (hasTree()) {
+                _tree.get(0).write(out, _tracked);
+            }
+        });
     }
 
     /** Reads in and deserializes a stage of BRANCH.
@@ -137,15 +164,37 @@ public class Stage implements Serializable {
             throw new IllegalArgumentException(
                     "No stage of branch with this name found.");
         }
-        return Utils.readObject(Utils.join(Main.STAGE,
-                branch.replace("/", "-")), Stage.class);
+        return fromFile(Utils.join(Main.STAGE, branch.replace("/", "-")));
+    }
+
+    /** Reads in the stage saved in FILE.
+     * @return Stage read from file */
+    public static Stage fromFile(File file) {
+        try (DataInputStream in = StateCodec.open(file, MAGIC, "stage")) {
+            Stage stage = new Stage(in.readUTF());
+            stage._root = StateCodec.readId(in);
+            StateCodec.readNames(in, stage._changed);
+            StateCodec.readFiles(in, stage._tracked);
+            if (in.readBoolean()) {
+                stage._tree.add(Tree.read(in, stage._tracked));
+            }
+            return stage;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException("Corrupt stage file.");
+        }
     }
 
     /** The tree in the staging area. */
     private LinkedList<Tree> _tree;
     /** Collection of tracked files. Key is the file name,
-     * value is the sha1 code for corresponding file. */
+     * value is the sha1 code for corresponding file. Shared with the
+     * tree, if there is one, as its tracked files. */
     private HashMap<String, String> _tracked;
     /** Branch name of this staging area. */
     private String _branch;
+    /** Id of the root tree node of the files tracked when they were last
+     *  committed or set, or null if unknown. */
+    private String _root;
+    /** Names whose tracked entries were removed since _root. */
+    private HashSet<String> _changed = new HashSet<>();
 }
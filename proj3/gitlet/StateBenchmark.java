@@ -0,0 +1,191 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+
+/** Compares the state files written by Java serialization, as branches
+ *  and stages were before, with those written by StateCodec: their
+ *  sizes and the times to write them, read them whole, read what every
+ *  command reads of a branch, and add one commit to a branch. Times are
+ *  medians of REPEATS runs after WARMUPS unmeasured ones.
+ *  Usage: java gitlet.StateBenchmark [COMMITS...]
+ *  With the classes built by make, the default run, with branches of
+ *  10,000, 100,000 and 1,000,000 commits, is, from the directory above
+ *  this package,
+ *      java -Xmx2g -cp . gitlet.StateBenchmark 10000 100000 1000000
+ *  The serialized branch of a million commits needs the larger heap.
+ *  The run takes about a minute and writes some 65 MB to a scratch
+ *  directory it removes afterwards.
+ *  @author Huixuan Lin
+ */
+public class StateBenchmark {
+
+    /** Numbers of commits of the branches measured unless given on the
+     *  command line. */
+    static final int[] DEFAULT_COMMITS = {10000, 100000, 1000000};
+    /** Number of files tracked by the stage measured. */
+    static final int FILES = 10000;
+    /** Number of measured runs of each operation. */
+    static final int REPEATS = 5;
+    /** Number of unmeasured runs of each operation before those. */
+    static final int WARMUPS = 2;
+
+    /** Measure branches of the numbers of commits in ARGS, and a stage,
+     *  in a scratch directory and report the results. */
+    public static void main(String... args) throws IOException {
+        int[] sizes = args.length == 0 ? DEFAULT_COMMITS
+                : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+        File dir = Files.createTempDirectory("gitlet-bench").toFile();
+        try {
+            for (int commits : sizes) {
+                benchBranch(dir, commits);
+            }
+            benchStage(dir);
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    /** Measure a branch of COMMITS commits saved in DIR. */
+    private static void benchBranch(File dir, int commits)
+            throws IOException {
+        LinkedList<String> ids = new LinkedList<>();
+        for (int i = 0; i < commits; i += 1) {
+            ids.add(Utils.sha1("commit " + i));
+        }
+        File old = Utils.join(dir, "serialized-branch");
+        File now = Utils.join(dir, "branch");
+        LegacyBranch legacy = new LegacyBranch("master", ids.getLast(), ids);
+        Branch branch = new Branch("master", ids.getLast());
+        branch.getCommits().addAll(ids);
+
+        System.out.printf("branch of %,d commits%n", commits);
+        report("write",
+                time(() -> Utils.writeObject(old, legacy)),
+                time(() -> branch.saveBranch(now)));
+        System.out.printf("  %-22s %,12d B %,12d B%n", "size",
+                old.length(), now.length());
+        report("read whole",
+                time(() -> Utils.readObject(old, LegacyBranch.class)),
+                time(() -> Branch.fromFile(now).getCommits()));
+        report("read head",
+                time(() -> Utils.readObject(old, LegacyBranch.class)
+                        .head.length()),
+                time(() -> Branch.fromFile(now).getHead().length()));
+        int[] added = {0};
+        report("read, commit, save",
+                time(() -> {
+                    LegacyBranch read =
+                            Utils.readObject(old, LegacyBranch.class);
+                    read.commits.add(Utils.sha1("new " + added[0]++));
+                    Utils.writeObject(old, read);
+                }),
+                time(() -> {
+                    Branch read = Branch.fromFile(now);
+                    read.addCommit(Utils.sha1("new " + added[0]++));
+                    read.saveBranch(now);
+                }));
+    }
+
+    /** Measure a stage tracking FILES files saved in DIR. */
+    private static void benchStage(File dir) throws IOException {
+        HashMap<String, String> files = new HashMap<>();
+        for (int i = 0; i < FILES; i += 1) {
+            files.put("dir" + i % 100 + "/file" + i, Utils.sha1("blob " + i));
+        }
+        String root = Utils.sha1("root");
+        File old = Utils.join(dir, "serialized-stage");
+        File now = Utils.join(dir, "stage");
+        LegacyStage legacy = new LegacyStage("master", root, files);
+        Stage stage = new Stage("master");
+        stage.setTracked(files, root);
+
+        System.out.printf("stage tracking %,d files%n", FILES);
+        report("write",
+                time(() -> Utils.writeObject(old, legacy)),
+                time(() -> stage.saveStage(now)));
+        System.out.printf("  %-22s %,12d B %,12d B%n", "size",
+                old.length(), now.length());
+        report("read",
+                time(() -> Utils.readObject(old, LegacyStage.class)),
+                time(() -> Stage.fromFile(now)));
+    }
+
+    /** Print the times BEFORE and AFTER, in nanoseconds, of the
+     *  operation NAME. */
+    private static void report(String name, long before, long after) {
+        System.out.printf("  %-22s %,12.3f ms %,11.3f ms  %5.1fx%n", name,
+                before / 1e6, after / 1e6, (double) before / after);
+    }
+
+    /** Return the median time of REPEATS runs of RUN, in nanoseconds. */
+    private static long time(Run run) throws IOException {
+        for (int i = 0; i < WARMUPS; i += 1) {
+            run.run();
+        }
+        long[] times = new long[REPEATS];
+        for (int i = 0; i < REPEATS; i += 1) {
+            long start = System.nanoTime();
+            run.run();
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        return times[REPEATS / 2];
+    }
+
+    /** An operation measured. */
+    private interface Run {
+        /** Perform the operation once. */
+        void run() throws IOException;
+    }
+
+    /** The fields of a branch as they were serialized. */
+    private static class LegacyBranch implements Serializable {
+        /** Constructor of the branch NAME with HEAD and COMMITS. */
+        LegacyBranch(String name, String head, LinkedList<String> commits) {
+            this.name = name;
+            this.head = head;
+            this.commits = new LinkedList<>(commits);
+        }
+
+        /** Name of the branch. */
+        private final String name;
+        /** Id of its head commit. */
+        private final String head;
+        /** Ids of its commits. */
+        private final LinkedList<String> commits;
+    }
+
+    /** The fields of a stage without staged changes as they were
+     *  serialized. */
+    private static class LegacyStage implements Serializable {
+        /** Constructor of the stage of BRANCH tracking FILES, whose root
+         *  tree node is ROOT. */
+        LegacyStage(String branch, String root,
+                    HashMap<String, String> files) {
+            this.branch = branch;
+            this.root = root;
+            this.tracked = new HashMap<>(files);
+        }
+
+        /** The tree in the staging area. */
+        private final LinkedList<Object> tree = new LinkedList<>();
+        /** Tracked files. */
+        private final HashMap<String, String> tracked;
+        /** Branch of the stage. */
+        private final String branch;
+        /** Id of the root tree node of the tracked files. */
+        private final String root;
+        /** Names removed since root. */
+        private final HashSet<String> changed = new HashSet<>();
+    }
+}
@@ -0,0 +1,157 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Map;
+
+/** The binary layout shared by the state files of a repository: its
+ *  branches, stages and remotes. Each file starts with the magic number
+ *  of its kind and the version of the layout, and is written whole
+ *  through a temporary file renamed into place. Ids are written as
+ *  twenty bytes behind a tag, which also marks a missing or empty id.
+ *  @author Huixuan Lin
+ */
+class StateCodec {
+
+    /** Version of the layout written. */
+    static final byte VERSION = 1;
+    /** Length of the header: magic number and version. */
+    static final int HEADER = 5;
+    /** Tag of a missing id. */
+    private static final byte NONE = 0;
+    /** Tag of an empty id. */
+    private static final byte EMPTY = 1;
+    /** Tag of an id written as its bytes. */
+    private static final byte ID = 2;
+    /** Tag of an id that is not hexadecimal, written as a string. */
+    private static final byte TEXT = 3;
+
+    /** What writes the body of a state file. */
+    interface Body {
+        /** Write the body of the file to OUT. */
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /** Write FILE as the header with MAGIC followed by what BODY
+     *  writes. */
+    static void write(File file, int magic, Body body) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(magic);
+            out.writeByte(VERSION);
+            body.write(out);
+        }
+        Files.move(temp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Return a stream of FILE past its header, which must hold MAGIC
+     *  and a version this layout reads. Throws an
+     *  IllegalArgumentException naming the KIND of file otherwise. */
+    static DataInputStream open(File file, int magic, String kind) {
+        try {
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)));
+            boolean valid;
+            try {
+                valid = in.readInt() == magic && in.readByte() == VERSION;
+            } catch (EOFException excp) {
+                valid = false;
+            }
+            if (valid) {
+                return in;
+            }
+            in.close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        throw new IllegalArgumentException("Corrupt " + kind + " file.");
+    }
+
+    /** Write ID, which may be null or empty, to OUT. */
+    static void writeId(DataOutput out, String id) throws IOException {
+        if (id == null) {
+            out.writeByte(NONE);
+        } else if (id.isEmpty()) {
+            out.writeByte(EMPTY);
+        } else if (Pack.isId(id)) {
+            out.writeByte(ID);
+            out.write(Pack.toBytes(id));
+        } else {
+            out.writeByte(TEXT);
+            out.writeUTF(id);
+        }
+    }
+
+    /** Return an id written by writeId from IN. */
+    static String readId(DataInput in) throws IOException {
+        switch (in.readByte()) {
+        case NONE:
+            return null;
+        case EMPTY:
+            return "";
+        case ID:
+            byte[] bytes = new byte[Pack.ID_BYTES];
+            in.readFully(bytes);
+            return Pack.toHex(bytes);
+        case TEXT:
+            return in.readUTF();
+        default:
+            throw new IOException("Bad id tag.");
+        }
+    }
+
+    /** Write NAMES to OUT, counted. */
+    static void writeNames(DataOutput out, Collection<String> names)
+            throws IOException {
+        out.writeInt(names.size());
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+    }
+
+    /** Add to NAMES the names written by writeNames from IN.
+     *  @return NAMES */
+    static <C extends Collection<String>> C readNames(DataInput in,
+                                                      C names)
+            throws IOException {
+        for (int i = in.readInt(); i > 0; i -= 1) {
+            names.add(in.readUTF());
+        }
+        return names;
+    }
+
+    /** Write FILES, mapping names to blob ids, to OUT, counted. */
+    static void writeFiles(DataOutput out, Map<String, String> files)
+            throws IOException {
+        out.writeInt(files.size());
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            out.writeUTF(file.getKey());
+            writeId(out, file.getValue());
+        }
+    }
+
+    /** Add to FILES the files written by writeFiles from IN.
+     *  @return FILES */
+    static <M extends Map<String, String>> M readFiles(DataInput in,
+                                                       M files)
+            throws IOException {
+        for (int i = in.readInt(); i > 0; i -= 1) {
+            files.put(in.readUTF(), readId(in));
+        }
+        return files;
+    }
+}
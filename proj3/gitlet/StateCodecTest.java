@@ -0,0 +1,147 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+import static org.junit.Assert.*;
+
+/** Tests of the state files: ids, branches and stages written and read
+ *  back.
+ *  @author Huixuan Lin
+ */
+public class StateCodecTest {
+
+    /** Return ID written by StateCodec.writeId and read back. */
+    private static String roundTrip(String id) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        StateCodec.writeId(new DataOutputStream(bytes), id);
+        return StateCodec.readId(new DataInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    /** Return the ids of N commits whose messages start with NAME. */
+    private static LinkedList<String> ids(String name, int n) {
+        LinkedList<String> ids = new LinkedList<>();
+        for (int i = 0; i < n; i += 1) {
+            ids.add(Utils.sha1(name + i));
+        }
+        return ids;
+    }
+
+    @Test
+    public void idsRoundTrip() throws IOException {
+        assertNull(roundTrip(null));
+        assertEquals("", roundTrip(""));
+        String id = Utils.sha1("x");
+        assertEquals(id, roundTrip(id));
+        assertEquals("not-an-id", roundTrip("not-an-id"));
+    }
+
+    @Test
+    public void branchRoundTripsAndAppends() throws IOException {
+        File dir = UnitTest.scratch();
+        try {
+            File file = Utils.join(dir, "branch");
+            LinkedList<String> ids = ids("c", 5);
+            Branch branch = new Branch("caf\u00e9\u0000", ids.getLast());
+            branch.getCommits().addAll(ids);
+            branch.saveBranch(file);
+
+            Branch read = Branch.fromFile(file);
+            assertEquals("caf\u00e9\u0000", read.getName());
+            assertEquals(ids.getLast(), read.getHead());
+            assertEquals(5, read.size());
+            String added = Utils.sha1("added");
+            read.addCommit(added);
+            read.saveBranch(file);
+            ids.add(added);
+
+            read = Branch.fromFile(file);
+            assertEquals(added, read.getHead());
+            assertEquals(ids, read.getCommits());
+        } finally {
+            UnitTest.delete(dir);
+        }
+    }
+
+    @Test
+    public void interruptedAppendIsIgnored() throws IOException {
+        File dir = UnitTest.scratch();
+        try {
+            File file = Utils.join(dir, "branch");
+            LinkedList<String> ids = ids("c", 3);
+            Branch branch = new Branch("master", ids.getLast());
+            branch.getCommits().addAll(ids);
+            branch.saveBranch(file);
+            try (FileOutputStream out = new FileOutputStream(file, true)) {
+                out.write(Pack.toBytes(Utils.sha1("lost")));
+            }
+
+            Branch read = Branch.fromFile(file);
+            assertEquals(ids.getLast(), read.getHead());
+            assertEquals(ids, read.getCommits());
+            read = Branch.fromFile(file);
+            String added = Utils.sha1("added");
+            read.addCommit(added);
+            read.saveBranch(file);
+            ids.add(added);
+            assertEquals(ids, Branch.fromFile(file).getCommits());
+            assertEquals(StateCodec.HEADER + 1 + Pack.ID_BYTES + 4 + 2
+                    + "master".length() + 4 * Pack.ID_BYTES, file.length());
+        } finally {
+            UnitTest.delete(dir);
+        }
+    }
+
+    @Test
+    public void stageRoundTrips() throws IOException {
+        File dir = UnitTest.scratch();
+        try {
+            File file = Utils.join(dir, "stage");
+            HashMap<String, String> files = new HashMap<>();
+            for (int i = 0; i < 20; i += 1) {
+                files.put("dir" + i % 3 + "/file" + i, Utils.sha1("" + i));
+            }
+            Stage stage = new Stage("remote/master");
+            stage.setTracked(files, Utils.sha1("root"));
+            stage.toRemove("dir0/file0");
+            stage.saveStage(file);
+
+            Stage read = Stage.fromFile(file);
+            files.remove("dir0/file0");
+            assertEquals(files, read.getTracked());
+            assertEquals(files, read.getTree().getTracked());
+            assertEquals("[dir0/file0]", read.getRemoval().toString());
+            assertTrue(read.getStaged().isEmpty());
+            assertFalse(read.allStaged());
+        } finally {
+            UnitTest.delete(dir);
+        }
+    }
+
+    @Test
+    public void wrongMagicIsRejected() throws IOException {
+        File dir = UnitTest.scratch();
+        try {
+            File file = Utils.join(dir, "stage");
+            new Stage("master").saveStage(file);
+            try {
+                Branch.fromFile(file);
+                fail("read a stage as a branch");
+            } catch (IllegalArgumentException excp) {
+                assertEquals("Corrupt branch file.", excp.getMessage());
+            }
+        } finally {
+            UnitTest.delete(dir);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Stack;
+
+/** Transfer of history from one object directory to another. The
+ *  commits wanted are found by walking back from a tip until reaching
+ *  commits the receiving side already has; only those commits, and the
+ *  trees and blobs they use that the receiving side lacks, are sent,
+ *  as a single pack written one object at a time.
+ *  @author Huixuan Lin
+ */
+public class Transfer {
+
+    /** Constructor of a transfer from object directory FROM to object
+     *  directory TO, or to a receiver holding nothing if TO is null. */
+    public Transfer(File from, File to) {
+        _from = from;
+        _to = to;
+    }
+
+    /** Add to the transfer the commit with id TIP, with every ancestor
+     *  of it the receiving side lacks and the objects they use. */
+    public void want(String tip) {
+        Stack<String> toVisit = new Stack<>();
+        List<Commit> found = new ArrayList<>();
+        toVisit.push(tip);
+        while (!toVisit.isEmpty()) {
+            String next = toVisit.pop();
+            if (next.isEmpty() || !_seen.add(next)
+                    || _to != null && Commit.exists(_to, next)) {
+                continue;
+            }
+            Commit commit = Commit.fromFile(_from, next);
+            found.add(commit);
+            TreeNode.walk(_from, commit.getFileSha1(), this::wantNode,
+                    blob -> wantObject(blob, _blobs));
+            toVisit.push(commit.getSecondParentId());
+            toVisit.push(commit.getParentId());
+        }
+        _commits.addAll(topological(found));
+    }
+
+    /** Return the number of objects the transfer sends. */
+    public int size() {
+        return _commits.size() + _trees.size() + _blobs.size() + _big.size();
+    }
+
+    /** Return the commits wanted, parents first. */
+    public List<Commit> commits() {
+        return _commits;
+    }
+
+    /** Return the ids of the trees wanted. */
+    public List<String> trees() {
+        return _trees;
+    }
+
+    /** Return the ids of the blobs wanted, followed by those of the
+     *  objects copied outside the pack. */
+    public List<String> blobs() {
+        List<String> result = new ArrayList<>(_blobs);
+        result.addAll(_big);
+        return result;
+    }
+
+    /** Send the objects wanted, and record the commits sent in the
+     *  receiving side's commit graph and, unless it is null, HISTORY,
+     *  parents first. */
+    public void send(History history) throws IOException {
+        for (String id : _big) {
+            Blob.copy(_from, _to, id);
+        }
+        List<String> packed = new ArrayList<>();
+        for (Commit commit : _commits) {
+            packed.add(commit.getCommitSha1());
+        }
+        packed.addAll(_trees);
+        packed.addAll(_blobs);
+        if (!packed.isEmpty()) {
+            ObjectDatabase source = ObjectDatabase.forObjects(_from);
+            Pack.write(Pack.dirFor(_to), packed, source::read);
+        }
+        for (Commit commit : _commits) {
+            CommitGraph.forObjects(_to).add(commit);
+            if (history != null) {
+                history.addCommitId(commit.getCommitSha1());
+            }
+        }
+    }
+
+    /** Want the tree node with ID, unless it was already considered or
+     *  the receiving side has it, and with it all the nodes and blobs
+     *  under it.
+     *  @return true if the nodes and blobs under it are to be walked */
+    private boolean wantNode(String id) {
+        if (!_seen.add(id) || _to != null && has(_to, id)) {
+            return false;
+        }
+        _trees.add(id);
+        return true;
+    }
+
+    /** Want the blob with ID, adding it to WANTED, if the sending side
+     *  has it and the receiving side does not. Loose blobs too large to
+     *  pack are copied as they are, and chunked blobs with only the
+     *  chunks the receiver lacks. */
+    private void wantObject(String id, List<String> wanted) {
+        if (!_seen.add(id) || _to != null && has(_to, id)
+                || !has(_from, id)) {
+            return;
+        }
+        if (Utils.join(_from, id).length() > Pack.BIG_FILE_THRESHOLD
+                || ChunkStore.forObjects(_from).has(id)) {
+            _big.add(id);
+        } else {
+            wanted.add(id);
+        }
+    }
+
+    /** Return true if object directory DIR holds the object with ID,
+     *  loose, packed or chunked. */
+    static boolean has(File dir, String id) {
+        return Blob.exists(dir, id);
+    }
+
+    /** Return COMMITS reordered so that every commit comes after those
+     *  of its parents in COMMITS. */
+    static List<Commit> topological(List<Commit> commits) {
+        HashMap<String, Commit> byId = new HashMap<>();
+        for (Commit commit : commits) {
+            byId.put(commit.getCommitSha1(), commit);
+        }
+        List<Commit> result = new ArrayList<>();
+        HashSet<String> done = new HashSet<>();
+        for (Commit commit : commits) {
+            Stack<Commit> path = new Stack<>();
+            path.push(commit);
+            while (!path.isEmpty()) {
+                Commit top = path.peek();
+                if (done.contains(top.getCommitSha1())) {
+                    path.pop();
+                    continue;
+                }
+                Commit parent = byId.get(top.getParentId());
+                Commit second = byId.get(top.getSecondParentId());
+                if (parent != null && !done.contains(parent.getCommitSha1())) {
+                    path.push(parent);
+                } else if (second != null
+                        && !done.contains(second.getCommitSha1())) {
+                    path.push(second);
+                } else {
+                    path.pop();
+                    done.add(top.getCommitSha1());
+                    result.add(top);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** The sending object directory. */
+    private final File _from;
+    /** The receiving object directory. */
+    private final File _to;
+    /** Ids of commits and objects already considered. */
+    private final HashSet<String> _seen = new HashSet<>();
+    /** Commits to send, parents first. */
+    private final List<Commit> _commits = new ArrayList<>();
+    /** Ids of tree nodes to send in the pack. */
+    private final List<String> _trees = new ArrayList<>();
+    /** Ids of blobs to send in the pack. */
+    private final List<String> _blobs = new ArrayList<>();
+    /** Ids of loose objects to copy outside the pack. */
+    private final List<String> _big = new ArrayList<>();
+}
@@ -0,0 +1,117 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+/** Tests of the transfer of history between object directories.
+ *  @author Huixuan Lin
+ */
+public class TransferTest {
+
+    /** Return the commit with parent PARENT and MESSAGE, saved in the
+     *  object directory OBJECTS with the blobs of CONTENTS, which maps
+     *  file names to their contents. */
+    private static Commit commit(File objects, Commit parent,
+                                 String message,
+                                 HashMap<String, String> contents)
+            throws IOException {
+        HashMap<String, String> files = new HashMap<>();
+        for (String name : contents.keySet()) {
+            files.put(name, Blob.save(objects, contents.get(name)
+                    .getBytes(StandardCharsets.UTF_8)));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        StateCodec.writeId(out, TreeNode.build(objects, files));
+        StateCodec.writeFiles(out, new HashMap<>());
+        StateCodec.writeNames(out, new TreeSet<>());
+        out.writeBoolean(true);
+        Tree tree = Tree.read(new DataInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())), files);
+        Commit commit = new Commit(tree, message);
+        commit.setParent(parent);
+        commit.saveCommit(objects);
+        return commit;
+    }
+
+    /** Return an object directory, with its pack directory beside it,
+     *  made under DIR as NAME. */
+    private static File objects(File dir, String name) {
+        File repo = Utils.join(dir, name);
+        File objects = Utils.join(repo, "object");
+        objects.mkdirs();
+        Pack.dirFor(objects).mkdir();
+        return objects;
+    }
+
+    /** Return the ids of the objects packed under object directory
+     *  OBJECTS. */
+    private static List<String> packed(File objects) {
+        return Pack.ids(Pack.dirFor(objects));
+    }
+
+    @Test
+    public void sendsOnlyMissingObjects() throws IOException {
+        File dir = UnitTest.scratch();
+        try {
+            File from = objects(dir, "from");
+            File to = objects(dir, "to");
+            HashMap<String, String> contents = new HashMap<>();
+            contents.put("a.txt", "a");
+            contents.put("dir/b.txt", "b");
+            Commit one = commit(from, null, "one", contents);
+            contents.put("dir/b.txt", "b2");
+            contents.put("c.txt", "c");
+            Commit two = commit(from, one, "two", contents);
+
+            Transfer first = new Transfer(from, to);
+            first.want(one.getCommitSha1());
+            assertEquals(1, first.commits().size());
+            assertEquals(2, first.blobs().size());
+            first.send(null);
+            assertEquals(first.size(), packed(to).size());
+            assertEquals(one.getFiles(),
+                    Commit.fromFile(to, one.getCommitSha1()).getFiles());
+
+            Transfer second = new Transfer(from, to);
+            second.want(two.getCommitSha1());
+            assertEquals(1, second.commits().size());
+            assertEquals(two.getCommitSha1(),
+                    second.commits().get(0).getCommitSha1());
+            HashSet<String> blobs = new HashSet<>();
+            blobs.add(two.getFiles().get("dir/b.txt"));
+            blobs.add(two.getFiles().get("c.txt"));
+            assertEquals(blobs, new HashSet<>(second.blobs()));
+            for (String id : second.trees()) {
+                assertFalse(Transfer.has(to, id));
+            }
+            int before = packed(to).size();
+            second.send(null);
+            assertEquals(before + second.size(), packed(to).size());
+            assertEquals(two.getFiles(),
+                    Commit.fromFile(to, two.getCommitSha1()).getFiles());
+
+            Transfer again = new Transfer(from, to);
+            again.want(two.getCommitSha1());
+            assertEquals(0, again.size());
+            before = packed(to).size();
+            again.send(null);
+            assertEquals(before, packed(to).size());
+        } finally {
+            UnitTest.delete(dir);
+        }
+    }
+}
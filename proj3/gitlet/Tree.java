@@ -1,9 +1,10 @@
 package gitlet;
 
-import java.io.File;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.io.Serializable;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.TreeSet;
 import java.util.SortedSet;
 import java.util.Set;
@@ -13,7 +14,7 @@ import java.util.Set;
 /** Class for tree which point to file.
  * @author Huixuan Lin
  */
-public class Tree implements Serializable {
+public class Tree {
 
     /** Constructor fo tree. */
     public Tree() {
@@ -21,7 +22,14 @@ public class Tree implements Serializable {
         _stagedName = new TreeSet<>();
         _tracked = new HashMap<>();
         _removal = new TreeSet<>();
-        _treeSha1 = "no tree";
+        _treeSha1 = TreeNode.EMPTY;
+    }
+
+    /** Constructor of tree tracking TRACKED, which it shares rather than
+     *  copies, so that changes made through either are seen by both. */
+    Tree(HashMap<String, String> tracked) {
+        this();
+        _tracked = tracked;
     }
 
     /** Add BLOB to the tree, waiting to be committed. */
@@ -45,11 +53,35 @@ public class Tree implements Serializable {
 
     }
 
-    /** After committing, make all staged files unstaged. */
-    public void commit() {
+    /** After committing, make all staged files unstaged. The id of this
+     *  tree becomes that of the root tree node of the tracked files,
+     *  whose nodes are all written. */
+    public void commit() throws IOException {
+        _tracked.putAll(_staged);
+        _treeSha1 = TreeNode.build(Main.OBJECT, _tracked);
+        clearStaged();
+    }
+
+    /** After committing, make all staged files unstaged. The id of this
+     *  tree becomes that of the root tree node of the tracked files,
+     *  found from BASE, the root node of the files tracked before, by
+     *  rewriting only the nodes over the names in CHANGED, whose entries
+     *  were removed since, and over the names staged. */
+    public void commit(String base, Set<String> changed) throws IOException {
         _tracked.putAll(_staged);
-        Object[] fileSha1 = _tracked.keySet().toArray();
-        _treeSha1 = Utils.sha1(fileSha1);
+        HashMap<String, String> changes = new HashMap<>();
+        for (String name : changed) {
+            changes.put(name, _tracked.get(name));
+        }
+        for (String name : _staged.keySet()) {
+            changes.put(name, _tracked.get(name));
+        }
+        _treeSha1 = TreeNode.update(Main.OBJECT, base, changes);
+        clearStaged();
+    }
+
+    /** Clear the files staged and to be removed. */
+    private void clearStaged() {
         _staged.clear();
         _stagedName.clear();
         _removal.clear();
@@ -79,33 +111,48 @@ public class Tree implements Serializable {
     public Set<String> getRemoval() {
         return _removal;
     }
-    /** Return the ash1 code for tracked files. */
+    /** Return the ash1 code for tracked files: the id of the root tree
+     *  node over their names and blob ids. */
     public String getSha1() {
         return _treeSha1;
     }
 
-    /** Set the tracked files of this tree into TRACKED. */
-    public void setTracked(HashMap<String, String> tracked) {
-        _tracked.putAll(tracked);
-    }
-    /** Save a tree to a file as future use. */
-    public void saveTree() throws IOException {
-        Utils.join(Main.OBJECT, getSha1()).createNewFile();
-        Utils.writeObject(Utils.join(Main.OBJECT, getSha1()), this);
+    /** Write this tree to OUT, leaving out its tracked files if they
+     *  equal TRACKED, those of the stage holding it. The staged names
+     *  are those of the staged files, so are not written. */
+    void write(DataOutput out, Map<String, String> tracked)
+            throws IOException {
+        StateCodec.writeId(out, _treeSha1);
+        StateCodec.writeFiles(out, _staged);
+        StateCodec.writeNames(out, _removal);
+        boolean same = _tracked.equals(tracked);
+        out.writeBoolean(same);
+        if (!same) {
+            StateCodec.writeFiles(out, _tracked);
+        }
     }
 
-    /** Reads in and deserializes a tree from a file with SHA1 code.
-     * @param  sha1 of tree to load
-     * @return Tree read from file */
-    public static Tree fromFile(String sha1) {
-        File treeFile = Utils.join(Main.OBJECT, sha1);
-        if (!treeFile.exists()) {
-            throw new IllegalArgumentException(
-                    "No tree file with that name found.");
+    /** Return the tree written by write from IN, sharing TRACKED as its
+     *  tracked files if they were left out. */
+    static Tree read(DataInput in, HashMap<String, String> tracked)
+            throws IOException {
+        Tree tree = new Tree();
+        tree._treeSha1 = StateCodec.readId(in);
+        StateCodec.readFiles(in, tree._staged);
+        tree._stagedName.addAll(tree._staged.keySet());
+        StateCodec.readNames(in, tree._removal);
+        if (in.readBoolean()) {
+            tree._tracked = tracked;
+        } else {
+            StateCodec.readFiles(in, tree._tracked);
         }
-        return Utils.readObject(treeFile, Tree.class);
+        return tree;
     }
 
+    /** Set the tracked files of this tree into TRACKED. */
+    public void setTracked(HashMap<String, String> tracked) {
+        _tracked.putAll(tracked);
+    }
 
     /** Collection of tracked files. Key is the file name,
      *  value is the sha1 code for corresponding file. */
@@ -0,0 +1,299 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/** One directory of the snapshot of a commit, stored as a Merkle node:
+ *  its entries, sorted by name, each naming a blob or the node of a
+ *  subdirectory by id, and its own id the SHA-1 of its record. Equal
+ *  directories have equal ids, so a directory that did not change
+ *  between commits is stored once and shared, and changing one file
+ *  writes only the nodes on the path from it to the root.
+ *  @author Huixuan Lin
+ */
+public class TreeNode {
+
+    /** Magic number at the front of a node record. */
+    static final int MAGIC = 0x474c5431;
+    /** Type of an entry naming a blob. */
+    static final byte FILE = 0;
+    /** Type of an entry naming the node of a subdirectory. */
+    static final byte DIRECTORY = 1;
+    /** Id of the node of an empty directory. */
+    static final String EMPTY =
+            Utils.sha1(new TreeNode(new TreeMap<>()).toBytes());
+
+    /** Constructor of the node with ENTRIES, keyed by name. */
+    private TreeNode(TreeMap<String, Entry> entries) {
+        _entries = entries;
+    }
+
+    /** Write into object directory DIR the nodes of FILES, mapping
+     *  paths to blob ids.
+     *  @return the id of the root node */
+    public static String build(File dir, Map<String, String> files)
+            throws IOException {
+        return update(dir, null, files);
+    }
+
+    /** Write into object directory DIR the nodes of the directory whose
+     *  root node has id ROOT, or of an empty directory if ROOT is null,
+     *  after CHANGES, mapping paths to their new blob ids or to null for
+     *  paths removed. Only nodes on the paths of CHANGES are rewritten.
+     *  @return the id of the new root node */
+    public static String update(File dir, String root,
+                                Map<String, String> changes)
+            throws IOException {
+        TreeNode node = change(dir, root, changes);
+        if (node == null) {
+            node = new TreeNode(new TreeMap<>());
+        }
+        return node.save(dir);
+    }
+
+    /** Return the files under the node with id ROOT in object directory
+     *  DIR, mapping paths to blob ids. */
+    public static HashMap<String, String> flatten(File dir, String root) {
+        HashMap<String, String> files = new HashMap<>();
+        flatten(dir, root, "", files);
+        return files;
+    }
+
+    /** Visit the node with id ROOT in object directory DIR and the nodes
+     *  and blobs under it, passing the id of each node to NODES before
+     *  going into it and skipping the nodes it rejects, and the id of
+     *  each blob of an entered node to BLOBS. */
+    public static void walk(File dir, String root, Predicate<String> nodes,
+                            Consumer<String> blobs) {
+        if (!nodes.test(root)) {
+            return;
+        }
+        for (Entry entry : load(dir, root)._entries.values()) {
+            if (entry.type == DIRECTORY) {
+                walk(dir, entry.id, nodes, blobs);
+            } else {
+                blobs.accept(entry.id);
+            }
+        }
+    }
+
+    /** Pass to CHANGED the path of every file and directory whose entry
+     *  differs between the nodes with ids BEFORE and AFTER in object
+     *  directory DIR, either of which may be null for an empty
+     *  directory. Subtrees with equal ids are skipped whole. */
+    public static void diff(File dir, String before, String after,
+                            Consumer<String> changed) {
+        diff(dir, before, after, "", changed);
+    }
+
+    /** Return the id of the blob or node at PATH under the node with id
+     *  ROOT in object directory DIR, or null if there is none. */
+    public static String lookup(File dir, String root, String path) {
+        Entry entry = entry(dir, root, path);
+        return entry == null ? null : entry.id;
+    }
+
+    /** Return the id of the blob at PATH under the node with id ROOT in
+     *  object directory DIR, or null if there is no file there. */
+    public static String lookupFile(File dir, String root, String path) {
+        Entry entry = entry(dir, root, path);
+        return entry == null || entry.type != FILE ? null : entry.id;
+    }
+
+    /** Return the entry at PATH under the node with id ROOT in object
+     *  directory DIR, or null if there is none. */
+    private static Entry entry(File dir, String root, String path) {
+        Entry entry = new Entry(DIRECTORY, root);
+        for (String name : path.split("/")) {
+            if (name.isEmpty()) {
+                continue;
+            } else if (entry.type != DIRECTORY) {
+                return null;
+            }
+            entry = load(dir, entry.id)._entries.get(name);
+            if (entry == null) {
+                return null;
+            }
+        }
+        return entry;
+    }
+
+    /** Return true if BYTES hold the record of a node. */
+    static boolean isNode(byte[] bytes) {
+        return bytes.length >= 4 && ((bytes[0] & 0xff) << 24
+                | (bytes[1] & 0xff) << 16 | (bytes[2] & 0xff) << 8
+                | (bytes[3] & 0xff)) == MAGIC;
+    }
+
+    /** Return the node whose record is BYTES. */
+    static TreeNode fromBytes(byte[] bytes) {
+        if (!isNode(bytes)) {
+            throw new IllegalArgumentException("Not a tree record.");
+        }
+        try {
+            DataInputStream in =
+                    new DataInputStream(new ByteArrayInputStream(bytes));
+            in.readInt();
+            TreeMap<String, Entry> entries = new TreeMap<>();
+            byte[] id = new byte[Pack.ID_BYTES];
+            for (int i = in.readInt(); i > 0; i -= 1) {
+                byte type = in.readByte();
+                String name = in.readUTF();
+                in.readFully(id);
+                entries.put(name, new Entry(type, Pack.toHex(id)));
+            }
+            return new TreeNode(entries);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException("Corrupt tree record.");
+        }
+    }
+
+    /** Return the record of this node. */
+    byte[] toBytes() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(_entries.size());
+            for (Map.Entry<String, Entry> entry : _entries.entrySet()) {
+                out.writeByte(entry.getValue().type);
+                out.writeUTF(entry.getKey());
+                out.write(Pack.toBytes(entry.getValue().id));
+            }
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error serializing tree.");
+        }
+    }
+
+    /** Save this node into object directory DIR.
+     *  @return its id */
+    private String save(File dir) throws IOException {
+        return Blob.save(dir, toBytes());
+    }
+
+    /** Return the node of the directory whose node has id ROOT in
+     *  object directory DIR, or of an empty directory if ROOT is null,
+     *  after CHANGES, writing the changed nodes under it into DIR but
+     *  not itself, or null if the directory is left empty. */
+    private static TreeNode change(File dir, String root,
+                                   Map<String, String> changes)
+            throws IOException {
+        TreeMap<String, Entry> before = root == null
+                ? new TreeMap<>() : load(dir, root)._entries;
+        TreeMap<String, Entry> entries = new TreeMap<>(before);
+        HashMap<String, Map<String, String>> below = new HashMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int slash = path.indexOf('/');
+            if (slash >= 0) {
+                below.computeIfAbsent(path.substring(0, slash),
+                        name -> new HashMap<>()).put(
+                                path.substring(slash + 1), change.getValue());
+            } else if (change.getValue() == null) {
+                entries.remove(path);
+            } else {
+                entries.put(path, new Entry(FILE, change.getValue()));
+            }
+        }
+        for (Map.Entry<String, Map<String, String>> sub : below.entrySet()) {
+            Entry old = entries.get(sub.getKey());
+            TreeNode child = change(dir,
+                    old != null && old.type == DIRECTORY ? old.id : null,
+                    sub.getValue());
+            if (child == null) {
+                entries.remove(sub.getKey());
+            } else {
+                entries.put(sub.getKey(),
+                        new Entry(DIRECTORY, child.save(dir)));
+            }
+        }
+        return entries.isEmpty() ? null : new TreeNode(entries);
+    }
+
+    /** Pass to CHANGED the paths, after PREFIX, of the entries that
+     *  differ between the nodes with ids BEFORE and AFTER in object
+     *  directory DIR, either of which may be null. */
+    private static void diff(File dir, String before, String after,
+                             String prefix, Consumer<String> changed) {
+        if (Objects.equals(before, after)) {
+            return;
+        }
+        TreeMap<String, Entry> old = before == null
+                ? new TreeMap<>() : load(dir, before)._entries;
+        TreeMap<String, Entry> now = after == null
+                ? new TreeMap<>() : load(dir, after)._entries;
+        TreeSet<String> names = new TreeSet<>(old.keySet());
+        names.addAll(now.keySet());
+        for (String name : names) {
+            Entry x = old.get(name), y = now.get(name);
+            if (Objects.equals(x, y)) {
+                continue;
+            }
+            changed.accept(prefix + name);
+            diff(dir, x != null && x.type == DIRECTORY ? x.id : null,
+                    y != null && y.type == DIRECTORY ? y.id : null,
+                    prefix + name + "/", changed);
+        }
+    }
+
+    /** Add to FILES the files under the node with id ROOT in object
+     *  directory DIR, their paths after PREFIX. */
+    private static void flatten(File dir, String root, String prefix,
+                                HashMap<String, String> files) {
+        for (Map.Entry<String, Entry> entry
+                : load(dir, root)._entries.entrySet()) {
+            Entry value = entry.getValue();
+            if (value.type == DIRECTORY) {
+                flatten(dir, value.id, prefix + entry.getKey() + "/", files);
+            } else {
+                files.put(prefix + entry.getKey(), value.id);
+            }
+        }
+    }
+
+    /** Return the node with id SHA1 in object directory DIR. */
+    private static TreeNode load(File dir, String sha1) {
+        return ObjectDatabase.forObjects(dir).node(sha1);
+    }
+
+    /** An entry of a node: a blob or a subdirectory node, by id. */
+    private static class Entry {
+        /** Constructor of the entry of TYPE naming ID. */
+        Entry(byte type, String id) {
+            this.type = type;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Entry && ((Entry) other).type == type
+                    && ((Entry) other).id.equals(id);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, id);
+        }
+
+        /** FILE or DIRECTORY. */
+        final byte type;
+        /** Id of the blob or node named. */
+        final String id;
+    }
+
+    /** Entries of this node, keyed by name. */
+    private final TreeMap<String, Entry> _entries;
+}
@@ -0,0 +1,114 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+/** Tests of the Merkle tree nodes of commit snapshots.
+ *  @author Huixuan Lin
+ */
+public class TreeNodeTest {
+
+    /** Return files mapping each of PATHS to the id of a blob named by
+     *  the path and VERSION. */
+    private static HashMap<String, String> files(String version,
+                                                 String... paths) {
+        HashMap<String, String> files = new HashMap<>();
+        for (String path : paths) {
+            files.put(path, Utils.sha1(version + path));
+        }
+        return files;
+    }
+
+    @Test
+    public void recordsRoundTrip() throws IOException {
+        File repo = UnitTest.scratch();
+        try {
+            File objects = Utils.join(repo, "object");
+            objects.mkdir();
+            HashMap<String, String> files = files("1", "a.txt",
+                    "dir/b.txt", "dir/sub/c.txt", "other/d.txt");
+            String root = TreeNode.build(objects, files);
+            assertEquals(files, TreeNode.flatten(objects, root));
+
+            byte[] record = Blob.fromFile(objects, root);
+            assertTrue(TreeNode.isNode(record));
+            assertArrayEquals(record,
+                    TreeNode.fromBytes(record).toBytes());
+            assertEquals(root, Utils.sha1(record));
+            assertEquals(root, TreeNode.build(objects, files));
+            assertEquals(TreeNode.EMPTY,
+                    TreeNode.build(objects, new HashMap<>()));
+
+            assertEquals(files.get("dir/sub/c.txt"),
+                    TreeNode.lookupFile(objects, root, "dir/sub/c.txt"));
+            assertNotNull(TreeNode.lookup(objects, root, "dir/sub"));
+            assertNull(TreeNode.lookupFile(objects, root, "dir/sub"));
+            assertNull(TreeNode.lookup(objects, root, "a.txt/x"));
+            assertNull(TreeNode.lookup(objects, root, "missing"));
+        } finally {
+            UnitTest.delete(repo);
+        }
+    }
+
+    @Test
+    public void notANode() {
+        assertFalse(TreeNode.isNode(new byte[] {1, 2}));
+        try {
+            TreeNode.fromBytes("plain text".getBytes(StandardCharsets.UTF_8));
+            fail("read a blob as a tree node");
+        } catch (IllegalArgumentException excp) {
+            assertEquals("Not a tree record.", excp.getMessage());
+        }
+    }
+
+    @Test
+    public void updateMatchesBuildAndSharesNodes() throws IOException {
+        File repo = UnitTest.scratch();
+        try {
+            File objects = Utils.join(repo, "object");
+            objects.mkdir();
+            HashMap<String, String> files = files("1", "a.txt",
+                    "dir/b.txt", "dir/sub/c.txt", "other/d.txt");
+            String root = TreeNode.build(objects, files);
+
+            Map<String, String> changes = new HashMap<>();
+            changes.put("dir/sub/c.txt", Utils.sha1("2"));
+            changes.put("other/d.txt", null);
+            changes.put("new/e.txt", Utils.sha1("3"));
+            String updated = TreeNode.update(objects, root, changes);
+            HashMap<String, String> after = new HashMap<>(files);
+            after.remove("other/d.txt");
+            after.put("dir/sub/c.txt", Utils.sha1("2"));
+            after.put("new/e.txt", Utils.sha1("3"));
+            assertEquals(after, TreeNode.flatten(objects, updated));
+            assertEquals(TreeNode.build(objects, after), updated);
+            assertNull(TreeNode.lookup(objects, updated, "other"));
+
+            TreeSet<String> changed = new TreeSet<>();
+            TreeNode.diff(objects, root, updated, changed::add);
+            assertTrue(changed.contains("dir/sub/c.txt"));
+            assertTrue(changed.contains("new"));
+            assertTrue(changed.contains("other"));
+            assertFalse(changed.contains("a.txt"));
+            assertFalse(changed.contains("dir/b.txt"));
+
+            HashMap<String, String> more = new HashMap<>(files);
+            more.put("other/d.txt", Utils.sha1("4"));
+            String moreRoot = TreeNode.build(objects, more);
+            assertEquals(TreeNode.lookup(objects, root, "dir"),
+                    TreeNode.lookup(objects, moreRoot, "dir"));
+            assertNotEquals(TreeNode.lookup(objects, root, "other"),
+                    TreeNode.lookup(objects, moreRoot, "other"));
+        } finally {
+            UnitTest.delete(repo);
+        }
+    }
+}
@@ -2,7 +2,10 @@ package gitlet;
 
 import ucb.junit.textui;
 import org.junit.Test;
-import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 
 /** The suite of all JUnit tests for the gitlet package.
  *  @author
@@ -12,7 +15,11 @@ public class UnitTest {
     /** Run the JUnit tests in the loa package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        textui.runClasses(UnitTest.class);
+        textui.runClasses(UnitTest.class, PackTest.class, CommitTest.class,
+                CommitIndexTest.class, DiffTest.class,
+                Diff3Test.class, StateCodecTest.class,
+                ChunkStoreTest.class, TreeNodeTest.class,
+                TransferTest.class, DaemonTest.class, CheckoutTest.class);
     }
 
     /** A dummy test to avoid complaint. */
@@ -20,6 +27,20 @@ public class UnitTest {
     public void placeholderTest() {
     }
 
-}
+    /** Return a new empty scratch directory. */
+    static File scratch() throws IOException {
+        return Files.createTempDirectory("gitlet-test").toFile();
+    }
 
+    /** Delete FILE and, if it is a directory, everything under it. */
+    static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
 
+}